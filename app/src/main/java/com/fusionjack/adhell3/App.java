@@ -6,6 +6,7 @@ import android.app.Application;
 import com.fusionjack.adhell3.dagger.component.AppComponent;
 import com.fusionjack.adhell3.dagger.component.DaggerAppComponent;
 import com.fusionjack.adhell3.dagger.module.AppModule;
+import com.fusionjack.adhell3.service.ReportMaintenanceJobService;
 
 public class App extends Application {
     private static App instance;
@@ -20,6 +21,7 @@ public class App extends Application {
         super.onCreate();
         instance = this;
         appComponent = initDagger(instance);
+        ReportMaintenanceJobService.schedule(this);
     }
 
     protected AppComponent initDagger(App application) {
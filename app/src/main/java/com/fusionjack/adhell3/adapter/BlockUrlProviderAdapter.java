@@ -5,6 +5,8 @@ import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AlertDialog;
+import android.text.format.Formatter;
+import android.util.LongSparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,11 +18,13 @@ import android.widget.Toast;
 
 import com.fusionjack.adhell3.App;
 import com.fusionjack.adhell3.R;
-import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
 import com.fusionjack.adhell3.db.entity.BlockUrlProvider;
+import com.fusionjack.adhell3.db.entity.BlockUrlProviderStats;
 import com.fusionjack.adhell3.tasks.SetDomainCountAsyncTask;
 import com.fusionjack.adhell3.utils.AdhellAppIntegrity;
 import com.fusionjack.adhell3.utils.AdhellFactory;
+import com.fusionjack.adhell3.utils.BlockUrlProviderCache;
 import com.fusionjack.adhell3.utils.BlockUrlUtils;
 
 import java.lang.ref.WeakReference;
@@ -32,10 +36,23 @@ public class BlockUrlProviderAdapter extends ArrayAdapter<BlockUrlProvider> {
 
     private static final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
+    // Metrics of the last update of every provider
+    private final LongSparseArray<BlockUrlProviderStats> providerStats = new LongSparseArray<>();
+
     public BlockUrlProviderAdapter(Context context, List<BlockUrlProvider> blockUrlProviders) {
         super(context, 0, blockUrlProviders);
     }
 
+    public void setProviderStats(@Nullable List<BlockUrlProviderStats> stats) {
+        providerStats.clear();
+        if (stats != null) {
+            for (BlockUrlProviderStats providerStat : stats) {
+                providerStats.put(providerStat.providerId, providerStat);
+            }
+        }
+        notifyDataSetChanged();
+    }
+
     @NonNull
     @Override
     public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
@@ -53,6 +70,7 @@ public class BlockUrlProviderAdapter extends ArrayAdapter<BlockUrlProvider> {
         CheckBox urlProviderCheckBox = convertView.findViewById(R.id.urlProviderCheckBox);
         ImageView deleteUrlImageView = convertView.findViewById(R.id.deleteUrlProviderImageView);
         TextView lastUpdatedTextView = convertView.findViewById(R.id.lastUpdatedTextView);
+        TextView providerStatsTextView = convertView.findViewById(R.id.providerStatsTextView);
         urlProviderCheckBox.setTag(position);
         deleteUrlImageView.setTag(position);
 
@@ -68,6 +86,22 @@ public class BlockUrlProviderAdapter extends ArrayAdapter<BlockUrlProvider> {
 
         Date lastUpdated = blockUrlProvider.lastUpdated == null ? new Date() : blockUrlProvider.lastUpdated;
         lastUpdatedTextView.setText(dateFormatter.format(lastUpdated));
+
+        BlockUrlProviderStats stats = providerStats.get(blockUrlProvider.id);
+        if (stats == null) {
+            providerStatsTextView.setVisibility(View.GONE);
+        } else if (stats.cached) {
+            providerStatsTextView.setVisibility(View.VISIBLE);
+            providerStatsTextView.setText(getContext().getString(R.string.provider_stats_cached,
+                    stats.parseTime, stats.writeTime,
+                    stats.lineCount, stats.commentLineCount, stats.unsupportedLineCount, stats.invalidLineCount));
+        } else {
+            providerStatsTextView.setVisibility(View.VISIBLE);
+            providerStatsTextView.setText(getContext().getString(R.string.provider_stats,
+                    Formatter.formatShortFileSize(getContext(), stats.downloadBytes),
+                    stats.downloadTime, stats.parseTime, stats.writeTime,
+                    stats.lineCount, stats.commentLineCount, stats.unsupportedLineCount, stats.invalidLineCount));
+        }
         if (!blockUrlProvider.deletable) {
             deleteUrlImageView.setVisibility(View.GONE);
         }
@@ -102,8 +136,11 @@ public class BlockUrlProviderAdapter extends ArrayAdapter<BlockUrlProvider> {
 
         @Override
         protected Void doInBackground(Void... voids) {
-            AppDatabase appDatabase = AppDatabase.getAppDatabase(App.get().getApplicationContext());
-            appDatabase.blockUrlProviderDao().delete(provider);
+            BlocklistDatabase blocklistDatabase = BlocklistDatabase.getBlocklistDatabase(App.get().getApplicationContext());
+            blocklistDatabase.blockUrlProviderDao().delete(provider);
+            blocklistDatabase.domainDao().deleteUnused();
+            blocklistDatabase.compact();
+            BlockUrlProviderCache.delete(provider.id);
             return null;
         }
 
@@ -129,15 +166,18 @@ public class BlockUrlProviderAdapter extends ArrayAdapter<BlockUrlProvider> {
 
         @Override
         protected Integer doInBackground(Void... o) {
-            provider.selected = isChecked;
-            AppDatabase appDatabase = AdhellFactory.getInstance().getAppDatabase();
-            appDatabase.blockUrlProviderDao().updateBlockUrlProviders(provider);
-            int totalUrls = BlockUrlUtils.getAllBlockedUrlsCount(appDatabase);
-            if (totalUrls > AdhellAppIntegrity.BLOCK_URL_LIMIT) {
-                provider.selected = false;
-                appDatabase.blockUrlProviderDao().updateBlockUrlProviders(provider);
-            }
-            return totalUrls;
+            BlocklistDatabase blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
+            return blocklistDatabase.runInTransaction(() -> {
+                // The unique domain count is updated by the database while the provider is updated
+                provider.selected = isChecked;
+                blocklistDatabase.blockUrlProviderDao().updateBlockUrlProviders(provider);
+                int totalUrls = BlockUrlUtils.getAllBlockedUrlsCount(blocklistDatabase);
+                if (totalUrls > AdhellAppIntegrity.BLOCK_URL_LIMIT) {
+                    provider.selected = false;
+                    blocklistDatabase.blockUrlProviderDao().updateBlockUrlProviders(provider);
+                }
+                return totalUrls;
+            });
         }
 
         @Override
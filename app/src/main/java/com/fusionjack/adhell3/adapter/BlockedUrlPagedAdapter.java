@@ -0,0 +1,117 @@
+package com.fusionjack.adhell3.adapter;
+
+import android.os.AsyncTask;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Adapter of a list of domains which can be too large to keep in memory. The domains are loaded page by page
+ * while scrolling and only the most recently shown pages are kept.
+ */
+public class BlockedUrlPagedAdapter extends BaseAdapter {
+
+    private static final int PAGE_SIZE = 500;
+    private static final int MAX_CACHED_PAGES = 10;
+
+    public interface PageLoader {
+        // afterUrl is the last domain of the previous page if that page is loaded, otherwise null
+        List<String> loadPage(int offset, int limit, @Nullable String afterUrl);
+    }
+
+    private final int count;
+    private final PageLoader pageLoader;
+    private final LruCache<Integer, List<String>> pages = new LruCache<>(MAX_CACHED_PAGES);
+    private final Set<Integer> loadingPages = new HashSet<>();
+
+    public BlockedUrlPagedAdapter(int count, PageLoader pageLoader) {
+        this.count = count;
+        this.pageLoader = pageLoader;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    // Returns null while the page of the domain is being loaded
+    @Override
+    public String getItem(int position) {
+        int page = position / PAGE_SIZE;
+
+        // The next page is loaded before the end of the current page is reached
+        if (position % PAGE_SIZE >= PAGE_SIZE * 3 / 4 && (page + 1) * PAGE_SIZE < count) {
+            loadPage(page + 1);
+        }
+
+        List<String> urls = pages.get(page);
+        if (urls == null) {
+            loadPage(page);
+            return null;
+        }
+        int index = position % PAGE_SIZE;
+        return index < urls.size() ? urls.get(index) : null;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        if (convertView == null) {
+            convertView = LayoutInflater.from(parent.getContext()).inflate(android.R.layout.simple_list_item_1, parent, false);
+        }
+        String url = getItem(position);
+        ((TextView) convertView.findViewById(android.R.id.text1)).setText(url == null ? "" : url);
+        return convertView;
+    }
+
+    private void loadPage(int page) {
+        if (pages.get(page) != null || !loadingPages.add(page)) {
+            return;
+        }
+        List<String> previousPage = page > 0 ? pages.get(page - 1) : null;
+        String afterUrl = previousPage == null || previousPage.isEmpty() ? null : previousPage.get(previousPage.size() - 1);
+        new LoadPageAsyncTask(page, afterUrl, this).execute();
+    }
+
+    private static class LoadPageAsyncTask extends AsyncTask<Void, Void, List<String>> {
+        private final int page;
+        private final String afterUrl;
+        private final PageLoader pageLoader;
+        private final WeakReference<BlockedUrlPagedAdapter> adapterReference;
+
+        LoadPageAsyncTask(int page, String afterUrl, BlockedUrlPagedAdapter adapter) {
+            this.page = page;
+            this.afterUrl = afterUrl;
+            this.pageLoader = adapter.pageLoader;
+            this.adapterReference = new WeakReference<>(adapter);
+        }
+
+        @Override
+        protected List<String> doInBackground(Void... voids) {
+            return pageLoader.loadPage(page * PAGE_SIZE, PAGE_SIZE, afterUrl);
+        }
+
+        @Override
+        protected void onPostExecute(List<String> urls) {
+            BlockedUrlPagedAdapter adapter = adapterReference.get();
+            if (adapter != null) {
+                adapter.loadingPages.remove(page);
+                adapter.pages.put(page, urls);
+                adapter.notifyDataSetChanged();
+            }
+        }
+    }
+}
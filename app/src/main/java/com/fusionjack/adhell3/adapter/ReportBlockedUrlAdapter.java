@@ -13,20 +13,20 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.fusionjack.adhell3.R;
-import com.fusionjack.adhell3.db.entity.ReportBlockedUrl;
+import com.fusionjack.adhell3.db.entity.ReportBlockedUrlStats;
 import com.fusionjack.adhell3.utils.AppCache;
 
 import java.text.SimpleDateFormat;
 import java.util.List;
 import java.util.Map;
 
-public class ReportBlockedUrlAdapter extends ArrayAdapter<ReportBlockedUrl> {
+public class ReportBlockedUrlAdapter extends ArrayAdapter<ReportBlockedUrlStats> {
     private Map<String, Drawable> appIcons;
     private Map<String, String> appNames;
 
     private static final SimpleDateFormat dateFormatter = new SimpleDateFormat("HH:mm:ss");
 
-    public ReportBlockedUrlAdapter(@NonNull Context context, @NonNull List<ReportBlockedUrl> objects, Handler handler) {
+    public ReportBlockedUrlAdapter(@NonNull Context context, @NonNull List<ReportBlockedUrlStats> objects, Handler handler) {
         super(context, 0, objects);
         AppCache appCache = AppCache.getInstance(context, handler);
         appIcons = appCache.getIcons();
@@ -39,7 +39,7 @@ public class ReportBlockedUrlAdapter extends ArrayAdapter<ReportBlockedUrl> {
         if (convertView == null) {
             convertView = LayoutInflater.from(getContext()).inflate(R.layout.item_blocked_url_info, parent, false);
         }
-        ReportBlockedUrl reportBlockedUrl = getItem(position);
+        ReportBlockedUrlStats reportBlockedUrl = getItem(position);
         if (reportBlockedUrl == null) {
             return convertView;
         }
@@ -57,7 +57,11 @@ public class ReportBlockedUrlAdapter extends ArrayAdapter<ReportBlockedUrl> {
         blockedDomainIconImageView.setImageDrawable(icon);
         blockedDomainAppNameTextView.setText(appName == null ? "(unknown)" : appName);
         blockedDomainUrlTextView.setText(reportBlockedUrl.url);
-        blockedDomainTimeTextView.setText(dateFormatter.format(reportBlockedUrl.blockDate));
+        String time = dateFormatter.format(reportBlockedUrl.lastBlockDate);
+        if (reportBlockedUrl.count > 1) {
+            time = getContext().getString(R.string.blocked_domain_count, time, reportBlockedUrl.count);
+        }
+        blockedDomainTimeTextView.setText(time);
 
         return convertView;
     }
@@ -4,6 +4,8 @@ import android.os.Handler;
 
 public interface ContentBlocker {
     void enableDomainRules(boolean updateProviders);
+    // Pushes the changes of the lists to the enabled domain rules, returns false if they are not enabled or the push failed
+    boolean applyDomainRuleChanges();
     void disableDomainRules();
     void enableFirewallRules();
     void disableFirewallRules();
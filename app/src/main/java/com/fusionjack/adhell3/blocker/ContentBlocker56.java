@@ -1,40 +1,52 @@
 package com.fusionjack.adhell3.blocker;
 
 import android.os.Handler;
+import android.support.annotation.Nullable;
 
 import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
 import com.fusionjack.adhell3.db.entity.AppInfo;
 import com.fusionjack.adhell3.utils.AdhellFactory;
 import com.fusionjack.adhell3.utils.AppPreferences;
+import com.fusionjack.adhell3.utils.AppliedDomainRules;
 import com.fusionjack.adhell3.utils.BlockUrlUtils;
+import com.fusionjack.adhell3.utils.BlockedDomainSnapshot;
 import com.fusionjack.adhell3.utils.FirewallUtils;
 import com.fusionjack.adhell3.utils.LogUtils;
-import com.google.common.collect.Lists;
+import com.fusionjack.adhell3.utils.SortedIterators;
+import com.google.common.collect.Sets;
 import com.samsung.android.knox.AppIdentity;
 import com.samsung.android.knox.net.firewall.DomainFilterRule;
 import com.samsung.android.knox.net.firewall.Firewall;
 import com.samsung.android.knox.net.firewall.FirewallResponse;
 import com.samsung.android.knox.net.firewall.FirewallRule;
 
+import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 public class ContentBlocker56 implements ContentBlocker {
     private static ContentBlocker56 mInstance = null;
 
     private Firewall firewall;
     private AppDatabase appDatabase;
+    private BlocklistDatabase blocklistDatabase;
     private Handler handler;
     private FirewallUtils firewallUtils;
 
     private ContentBlocker56() {
         this.appDatabase = AdhellFactory.getInstance().getAppDatabase();
+        this.blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
         this.firewall = AdhellFactory.getInstance().getFirewall();
         this.firewallUtils = FirewallUtils.getInstance();
     }
@@ -53,13 +65,14 @@ public class ContentBlocker56 implements ContentBlocker {
         return mInstance;
     }
 
+    // The handler is only replaced in between pushes, a caller keeps it by synchronizing on the content blocker
     @Override
-    public void setHandler(Handler handler) {
+    public synchronized void setHandler(Handler handler) {
         this.handler = handler;
     }
 
     @Override
-    public void enableFirewallRules() {
+    public synchronized void enableFirewallRules() {
         if (firewall == null) {
             return;
         }
@@ -67,9 +80,12 @@ public class ContentBlocker56 implements ContentBlocker {
         LogUtils.info("Enabling firewall rules...", handler);
 
         try {
-            processCustomRules();
-            processMobileRestrictedApps();
-            processWifiRestrictedApps();
+            FirewallRuleBatch firewallRules = new FirewallRuleBatch(
+                    firewall.getRules(Firewall.FIREWALL_DENY_RULE, FirewallRule.Status.ENABLED));
+            processCustomRules(firewallRules);
+            processMobileRestrictedApps(firewallRules);
+            processWifiRestrictedApps(firewallRules);
+            firewallRules.apply(firewallUtils, handler);
 
             LogUtils.info("\nFirewall rules are enabled.", handler);
 
@@ -85,7 +101,7 @@ public class ContentBlocker56 implements ContentBlocker {
     }
 
     @Override
-    public void disableFirewallRules() {
+    public synchronized void disableFirewallRules() {
         if (firewall == null) {
             return;
         }
@@ -107,22 +123,60 @@ public class ContentBlocker56 implements ContentBlocker {
     }
 
     @Override
-    public void enableDomainRules(boolean updateProviders) {
+    public synchronized void enableDomainRules(boolean updateProviders) {
         if (firewall == null) {
             return;
         }
 
         LogUtils.info("Enabling domain rules...", handler);
+        pushDomainRules(updateProviders);
+    }
+
+    @Override
+    public synchronized boolean applyDomainRuleChanges() {
+        if (firewall == null || isDomainRuleEmpty()) {
+            return false;
+        }
 
+        LogUtils.info("Applying domain rule changes...", handler);
+        return pushDomainRules(false);
+    }
+
+    // Pushes the rules which changed since the last push, returns false if the push failed
+    private boolean pushDomainRules(boolean updateProviders) {
         try {
-            processWhitelistedApps();
-            processWhitelistedDomains();
-            processUserBlockedDomains();
-            processBlockedDomains(updateProviders);
-            AdhellFactory.getInstance().applyDns(handler);
+            // The recorded rules are only trusted if Knox still has rules
+            boolean isDomainRuleEmpty = isDomainRuleEmpty();
+            AppliedDomainRules appliedRules = isDomainRuleEmpty ? null : AppliedDomainRules.load();
+
+            BlockedDomainSnapshot blockedDomains = updateBlockedDomains(updateProviders);
+            String dnsConfig = AdhellFactory.getInstance().getDnsConfig();
+            AppliedDomainRules rules = new AppliedDomainRules(blockedDomains.getVersion(), dnsConfig);
+            processWhitelistedApps(rules);
+            processWhitelistedDomains(rules);
+            processUserBlockedDomains(rules);
+            processBlockedDomains(rules, blockedDomains);
+
+            BlockedDomainSnapshot appliedBlockedDomains = null;
+            if (appliedRules != null && appliedRules.hasBlockedDomains()) {
+                appliedBlockedDomains = BlockedDomainSnapshot.openApplied(appliedRules.getBlockedDomainsVersion());
+            }
+            boolean applyDifference = appliedRules != null && dnsConfig.equals(appliedRules.getDnsConfig()) &&
+                    (appliedBlockedDomains != null || !appliedRules.hasBlockedDomains());
 
-            LogUtils.info("\nDomain rules are enabled.", handler);
+            // Knox is about to change, the record is written again once the push is done or has failed
+            AppliedDomainRules.delete();
+            if (applyDifference) {
+                LogUtils.info("\nApplying the changes since the domain rules were last enabled...", handler);
+            } else {
+                if (!isDomainRuleEmpty) {
+                    clearDomainRules();
+                }
+                appliedRules = AppliedDomainRules.empty();
+                AdhellFactory.getInstance().applyDns(handler);
+            }
 
+            // The firewall is enabled first, so that the rules of a push which fails halfway are kept as they are
             if (!firewall.isFirewallEnabled()) {
                 LogUtils.info("\nEnabling Knox firewall...", handler);
                 firewall.enableFirewall(true);
@@ -133,24 +187,33 @@ public class ContentBlocker56 implements ContentBlocker {
                 firewall.enableDomainFilterReport(true);
                 LogUtils.info("Firewall report is enabled.", handler);
             }
+
+            int rejectedCount = applyDomainRules(appliedRules, appliedBlockedDomains, rules, blockedDomains);
+            if (rejectedCount > 0) {
+                LogUtils.info("\nKnox rejected " + rejectedCount + " domains, they are skipped and added again next time.", handler);
+            }
+            blockedDomains.saveAsApplied();
+            rules.save();
+
+            AppPreferences.getInstance().setDomainRulesOutdated(false);
+            LogUtils.info("\nDomain rules are enabled.", handler);
+            return true;
         } catch (Exception e) {
-            disableDomainRules();
-            e.printStackTrace();
+            // The rules which have been pushed are kept, the next push applies the remaining ones
+            LogUtils.error("Cannot push all the domain rules, the remaining ones are pushed next time", e, handler);
+            return false;
         }
     }
 
     @Override
-    public void disableDomainRules() {
+    public synchronized void disableDomainRules() {
         if (firewall == null) {
             return;
         }
 
         LogUtils.info("Disabling domain rules...", handler);
 
-        // Clear domain filter rules
-        LogUtils.info("\nClearing domain rules...", handler);
-        FirewallResponse[] response = firewall.removeDomainFilterRules(DomainFilterRule.CLEAR_ALL);
-        LogUtils.info(response == null ? "No response" : response[0].getMessage(), handler);
+        clearDomainRules();
 
         LogUtils.info("\nDomain rules are disabled.", handler);
 
@@ -166,10 +229,20 @@ public class ContentBlocker56 implements ContentBlocker {
         AppPreferences.getInstance().resetBlockedDomainsCount();
     }
 
-    private void processCustomRules() throws Exception {
+    private void clearDomainRules() {
+        // Clear domain filter rules
+        LogUtils.info("\nClearing domain rules...", handler);
+        FirewallResponse[] response = firewall.removeDomainFilterRules(DomainFilterRule.CLEAR_ALL);
+        LogUtils.info(response == null ? "No response" : response[0].getMessage(), handler);
+
+        AppliedDomainRules.delete();
+        BlockedDomainSnapshot.deleteApplied();
+        AppPreferences.getInstance().setDomainRulesOutdated(false);
+    }
+
+    private void processCustomRules(FirewallRuleBatch firewallRules) throws Exception {
         LogUtils.info("\nProcessing custom rules...", handler);
 
-        FirewallRule[] enabledRules = firewall.getRules(Firewall.FIREWALL_DENY_RULE, FirewallRule.Status.ENABLED);
         int count = 0;
         List<String> urls = appDatabase.userBlockUrlDao().getAll3();
         for (String url : urls) {
@@ -180,50 +253,39 @@ public class ContentBlocker56 implements ContentBlocker {
                     String ip = tokens.nextToken().trim();
                     String port = tokens.nextToken().trim();
 
-                    boolean add = true;
-                    for (FirewallRule enabledRule : enabledRules) {
-                        String packageName1 = enabledRule.getApplication().getPackageName();
-                        String ip1 = enabledRule.getIpAddress();
-                        String port1 = enabledRule.getPortNumber();
-                        if (packageName1.equalsIgnoreCase(packageName) && ip1.equalsIgnoreCase(ip) && port1.equalsIgnoreCase(port)) {
-                            add = false;
-                        }
-                    }
-
-                    LogUtils.info("\nRule: " + packageName + "|" + ip + "|" + port, handler);
-                    if (add) {
-                        FirewallRule[] firewallRules;
-                        if (ip.equalsIgnoreCase("*")) {
-                            firewallRules = new FirewallRule[2];
-                            firewallRules[0] = new FirewallRule(FirewallRule.RuleType.DENY, Firewall.AddressType.IPV4);
-                            firewallRules[0].setIpAddress(ip);
-                            firewallRules[0].setPortNumber(port);
-                            firewallRules[0].setApplication(new AppIdentity(packageName, null));
-
-                            firewallRules[1] = new FirewallRule(FirewallRule.RuleType.DENY, Firewall.AddressType.IPV6);
-                            firewallRules[1].setIpAddress(ip);
-                            firewallRules[1].setPortNumber(port);
-                            firewallRules[1].setApplication(new AppIdentity(packageName, null));
+                    String rule = packageName + "|" + ip + "|" + port;
+                    LogUtils.info("\nRule: " + rule, handler);
+                    FirewallRule[] customRules;
+                    if (ip.equalsIgnoreCase("*")) {
+                        customRules = new FirewallRule[2];
+                        customRules[0] = new FirewallRule(FirewallRule.RuleType.DENY, Firewall.AddressType.IPV4);
+                        customRules[0].setIpAddress(ip);
+                        customRules[0].setPortNumber(port);
+                        customRules[0].setApplication(new AppIdentity(packageName, null));
+
+                        customRules[1] = new FirewallRule(FirewallRule.RuleType.DENY, Firewall.AddressType.IPV6);
+                        customRules[1].setIpAddress(ip);
+                        customRules[1].setPortNumber(port);
+                        customRules[1].setApplication(new AppIdentity(packageName, null));
+                    } else {
+                        Firewall.AddressType type;
+                        InetAddress address = InetAddress.getByName(ip);
+                        if (address instanceof Inet6Address) {
+                            type = Firewall.AddressType.IPV6;
+                        } else if (address instanceof Inet4Address) {
+                            type = Firewall.AddressType.IPV4;
                         } else {
-                            Firewall.AddressType type;
-                            InetAddress address = InetAddress.getByName(ip);
-                            if (address instanceof Inet6Address) {
-                                type = Firewall.AddressType.IPV6;
-                            } else if (address instanceof Inet4Address) {
-                                type = Firewall.AddressType.IPV4;
-                            } else {
-                                throw new Exception("Unknown ip address type");
-                            }
-
-                            firewallRules = new FirewallRule[1];
-                            firewallRules[0] = new FirewallRule(FirewallRule.RuleType.DENY, type);
-                            firewallRules[0].setIpAddress(ip);
-                            firewallRules[0].setPortNumber(port);
-                            firewallRules[0].setApplication(new AppIdentity(packageName, null));
+                            throw new Exception("Unknown ip address type");
                         }
 
-                        firewallUtils.addFirewallRules(firewallRules, handler);
-                    } else {
+                        customRules = new FirewallRule[1];
+                        customRules[0] = new FirewallRule(FirewallRule.RuleType.DENY, type);
+                        customRules[0].setIpAddress(ip);
+                        customRules[0].setPortNumber(port);
+                        customRules[0].setApplication(new AppIdentity(packageName, null));
+                    }
+
+                    if (!firewallRules.add(rule, packageName, ip, port, customRules)) {
                         LogUtils.info("The firewall rule is already been enabled", handler);
                     }
 
@@ -235,7 +297,7 @@ public class ContentBlocker56 implements ContentBlocker {
         LogUtils.info("Custom rule size: " + count, handler);
     }
 
-    private void processMobileRestrictedApps() throws Exception {
+    private void processMobileRestrictedApps(FirewallRuleBatch firewallRules) {
         LogUtils.info("\nProcessing mobile restricted apps...", handler);
 
         List<AppInfo> restrictedApps = appDatabase.applicationInfoDao().getMobileRestrictedApps();
@@ -245,32 +307,19 @@ public class ContentBlocker56 implements ContentBlocker {
             return;
         }
 
-        FirewallRule[] enabledRules = firewall.getRules(Firewall.FIREWALL_DENY_RULE, FirewallRule.Status.ENABLED);
         for (AppInfo app : restrictedApps) {
             String packageName = app.packageName;
 
-            boolean add = true;
-            for (FirewallRule enabledRule : enabledRules) {
-                String packageName1 = enabledRule.getApplication().getPackageName();
-                Firewall.NetworkInterface networkInterface = enabledRule.getNetworkInterface();
-                if (packageName1.equalsIgnoreCase(packageName) && networkInterface == Firewall.NetworkInterface.MOBILE_DATA_ONLY) {
-                    add = false;
-                    break;
-                }
-            }
-
             LogUtils.info("Package name: " + packageName, handler);
-            if (add) {
-                FirewallRule[] mobileRules = firewallUtils.createFirewallRules(packageName,
-                        Firewall.NetworkInterface.MOBILE_DATA_ONLY);
-                firewallUtils.addFirewallRules(mobileRules, handler);
-            } else {
+            FirewallRule[] mobileRules = firewallUtils.createFirewallRules(packageName,
+                    Firewall.NetworkInterface.MOBILE_DATA_ONLY);
+            if (!firewallRules.add(packageName + " (mobile)", packageName, Firewall.NetworkInterface.MOBILE_DATA_ONLY, mobileRules)) {
                 LogUtils.info("The firewall rule is already been enabled", handler);
             }
         }
     }
 
-    private void processWifiRestrictedApps() throws Exception {
+    private void processWifiRestrictedApps(FirewallRuleBatch firewallRules) {
         LogUtils.info("\nProcessing wifi restricted apps...", handler);
 
         List<AppInfo> restrictedApps = appDatabase.applicationInfoDao().getWifiRestrictedApps();
@@ -280,32 +329,19 @@ public class ContentBlocker56 implements ContentBlocker {
             return;
         }
 
-        FirewallRule[] enabledRules = firewall.getRules(Firewall.FIREWALL_DENY_RULE, FirewallRule.Status.ENABLED);
         for (AppInfo app : restrictedApps) {
             String packageName = app.packageName;
 
-            boolean add = true;
-            for (FirewallRule enabledRule : enabledRules) {
-                String packageName1 = enabledRule.getApplication().getPackageName();
-                Firewall.NetworkInterface networkInterface = enabledRule.getNetworkInterface();
-                if (packageName1.equalsIgnoreCase(packageName) && networkInterface == Firewall.NetworkInterface.WIFI_DATA_ONLY) {
-                    add = false;
-                    break;
-                }
-            }
-
             LogUtils.info("Package name: " + packageName, handler);
-            if (add) {
-                FirewallRule[] wifiRules = firewallUtils.createFirewallRules(packageName,
-                        Firewall.NetworkInterface.WIFI_DATA_ONLY);
-                firewallUtils.addFirewallRules(wifiRules, handler);
-            } else {
+            FirewallRule[] wifiRules = firewallUtils.createFirewallRules(packageName,
+                    Firewall.NetworkInterface.WIFI_DATA_ONLY);
+            if (!firewallRules.add(packageName + " (wifi)", packageName, Firewall.NetworkInterface.WIFI_DATA_ONLY, wifiRules)) {
                 LogUtils.info("The firewall rule is already been enabled", handler);
             }
         }
     }
 
-    private void processWhitelistedApps() throws Exception {
+    private void processWhitelistedApps(AppliedDomainRules rules) {
         LogUtils.info("\nProcessing white-listed apps...", handler);
 
         // Create domain filter rule for white listed apps
@@ -315,17 +351,15 @@ public class ContentBlocker56 implements ContentBlocker {
             return;
         }
 
-        List<DomainFilterRule> rules = new ArrayList<>();
         List<String> superAllow = new ArrayList<>();
         superAllow.add("*");
         for (AppInfo app : whitelistedApps) {
             LogUtils.info("Package name: " + app.packageName, handler);
-            rules.add(new DomainFilterRule(new AppIdentity(app.packageName, null), new ArrayList<>(), superAllow));
+            rules.add(app.packageName, false, new ArrayList<>(), superAllow);
         }
-        firewallUtils.addDomainFilterRules(rules, handler);
     }
 
-    private void processWhitelistedDomains() throws Exception {
+    private void processWhitelistedDomains(AppliedDomainRules rules) {
         LogUtils.info("\nProcessing whitelist...", handler);
 
         // Process user-defined white list
@@ -337,9 +371,9 @@ public class ContentBlocker56 implements ContentBlocker {
             return;
         }
 
-        List<String> denyList = BlockUrlUtils.getAllBlockedUrls(appDatabase);
-        List<String> userList = BlockUrlUtils.getUserBlockedUrls(appDatabase, false, null);
-        denyList.addAll(userList);
+        // The rule of a package gets the whole deny list together with its allow list
+        List<String> userDenyList = BlockUrlUtils.getUserBlockedUrls(appDatabase, false, null);
+        Map<String, List<String>> packageAllowLists = new TreeMap<>();
         for (String whiteUrl : whiteUrls) {
             if (whiteUrl.indexOf('|') != -1) {
                 StringTokenizer tokens = new StringTokenizer(whiteUrl, "|");
@@ -348,13 +382,18 @@ public class ContentBlocker56 implements ContentBlocker {
                     final String url = tokens.nextToken();
                     LogUtils.info("PackageName: " + packageName + ", Domain: " + url, handler);
 
-                    final AppIdentity appIdentity = new AppIdentity(packageName, null);
-                    List<String> allowList = new ArrayList<>();
+                    List<String> allowList = packageAllowLists.get(packageName);
+                    if (allowList == null) {
+                        allowList = new ArrayList<>();
+                        packageAllowLists.put(packageName, allowList);
+                    }
                     allowList.add(url);
-                    processDomains(appIdentity, denyList, allowList);
                 }
             }
         }
+        for (Map.Entry<String, List<String>> entry : packageAllowLists.entrySet()) {
+            rules.add(entry.getKey(), true, userDenyList, entry.getValue());
+        }
 
         // Whitelist URL for all apps
         Set<String> allowList = new HashSet<>();
@@ -365,52 +404,118 @@ public class ContentBlocker56 implements ContentBlocker {
             }
         }
         if (allowList.size() > 0) {
-            final AppIdentity appIdentity = new AppIdentity("*", null);
-            List<DomainFilterRule> rules = new ArrayList<>();
-            rules.add(new DomainFilterRule(appIdentity, new ArrayList<>(), new ArrayList<>(allowList)));
-            firewallUtils.addDomainFilterRules(rules, handler);
+            rules.add(Firewall.FIREWALL_ALL_PACKAGES, false, new ArrayList<>(), allowList);
         }
     }
 
-    private void processUserBlockedDomains() throws Exception {
+    private void processUserBlockedDomains(AppliedDomainRules rules) {
         LogUtils.info("\nProcessing blacklist...", handler);
 
         List<String> denyList = BlockUrlUtils.getUserBlockedUrls(appDatabase, true, handler);
         if (denyList.size() > 0) {
-            List<DomainFilterRule> rules = new ArrayList<>();
-            final AppIdentity appIdentity = new AppIdentity("*", null);
-            rules.add(new DomainFilterRule(appIdentity, denyList, new ArrayList<>()));
-            firewallUtils.addDomainFilterRules(rules, handler);
+            rules.add(Firewall.FIREWALL_ALL_PACKAGES, false, denyList, new ArrayList<>());
         }
     }
 
-    private void processBlockedDomains(boolean updateProviders) throws Exception {
-        LogUtils.info("\nProcessing blocked domains...", handler);
-
+    // The providers are updated before any rule is collected, the rules refer to the snapshot of their domains
+    private BlockedDomainSnapshot updateBlockedDomains(boolean updateProviders) throws Exception {
         if (updateProviders) {
-            LogUtils.info("Updating providers...", handler);
+            LogUtils.info("\nUpdating providers...", handler);
             AdhellFactory.getInstance().updateAllProviders();
+        } else {
+            AdhellFactory.getInstance().rebuildProvidersFromCache();
         }
+        return BlockedDomainSnapshot.open(blocklistDatabase);
+    }
+
+    private void processBlockedDomains(AppliedDomainRules rules, BlockedDomainSnapshot blockedDomains) {
+        LogUtils.info("\nProcessing blocked domains...", handler);
 
-        List<String> denyList = BlockUrlUtils.getAllBlockedUrls(appDatabase);
-        LogUtils.info("Total unique domains to block: " + denyList.size(), handler);
-        AppPreferences.getInstance().setBlockedDomainsCount(denyList.size());
+        LogUtils.info("Total unique domains to block: " + blockedDomains.size(), handler);
+        AppPreferences.getInstance().setBlockedDomainsCount(blockedDomains.size());
 
-        final AppIdentity appIdentity = new AppIdentity("*", null);
-        processDomains(appIdentity, denyList, new ArrayList<>());
+        rules.add(Firewall.FIREWALL_ALL_PACKAGES, true, new ArrayList<>(), new ArrayList<>());
     }
 
-    private void processDomains(AppIdentity appIdentity, List<String> denyList, List<String> allowList) throws Exception {
-        int start = 0;
-        List<List<String>> chunks = Lists.partition(denyList, 5000);
-        for (List<String> chunk : chunks) {
-            LogUtils.info("\nProcessing " + start + " to " + (start + chunk.size()) + " domains...", handler);
-            start += chunk.size();
+    // Removes the domains which are not part of the rules anymore and adds the new ones, package by package.
+    // Against empty applied rules, all the rules are added. Returns the number of domains which Knox rejected.
+    // If the push fails, the packages which have been pushed are recorded with their new rules and the others
+    // with their applied rules, so that the next push continues from there. This is not possible once a package got
+    // blocked domains of another version than the applied ones, then nothing is recorded and the next push starts over.
+    private int applyDomainRules(AppliedDomainRules appliedRules, @Nullable BlockedDomainSnapshot appliedBlockedDomains,
+                                 AppliedDomainRules rules, BlockedDomainSnapshot blockedDomains) throws Exception {
+        DomainRulePusher pusher = new DomainRulePusher(firewall, handler);
+        int rejectedCount = 0;
+        Set<String> sortedPackageNames = new TreeSet<>(appliedRules.getPackageNames());
+        sortedPackageNames.addAll(rules.getPackageNames());
+        // All packages are pushed last, so that the allow list of a package is in place before its domains are blocked for all
+        List<String> packageNames = new ArrayList<>(sortedPackageNames);
+        if (packageNames.remove(Firewall.FIREWALL_ALL_PACKAGES)) {
+            packageNames.add(Firewall.FIREWALL_ALL_PACKAGES);
+        }
+        AppliedDomainRules pushedRules = new AppliedDomainRules(appliedRules.getBlockedDomainsVersion(), rules.getDnsConfig());
+        boolean blockedDomainsChanged = appliedRules.getBlockedDomainsVersion() != blockedDomains.getVersion();
+        boolean recordable = true;
+        try {
+            for (String packageName : packageNames) {
+                // Knox gets the new blocked domains, the partial record can only refer to the applied ones
+                recordable &= !(blockedDomainsChanged && rules.hasBlockedDomains(packageName));
+                rejectedCount += applyPackageDomainRules(pusher, packageName, appliedRules, appliedBlockedDomains, rules, blockedDomains);
+                pushedRules.copy(packageName, rules);
+            }
+        } catch (Exception e) {
+            if (!recordable) {
+                // Without a record, the next push clears the domain rules and pushes all of them
+                throw e;
+            }
+            for (String packageName : packageNames) {
+                if (!pushedRules.getPackageNames().contains(packageName)) {
+                    pushedRules.copy(packageName, appliedRules);
+                }
+            }
+            try {
+                pushedRules.save();
+            } catch (IOException saveException) {
+                e.addSuppressed(saveException);
+            }
+            throw e;
+        } finally {
+            pusher.shutdown();
+        }
+        return rejectedCount;
+    }
+
+    private int applyPackageDomainRules(DomainRulePusher pusher, String packageName,
+                                        AppliedDomainRules appliedRules, @Nullable BlockedDomainSnapshot appliedBlockedDomains,
+                                        AppliedDomainRules rules, BlockedDomainSnapshot blockedDomains) throws Exception {
+        int rejectedCount = 0;
+        // A removal which Knox rejects is not recorded, Knox might not have the domain anymore, e.g. after a push
+        // which failed halfway. Retrying it would fail on every push. The rejected additions are only recorded
+        // once the domains of the rules have been read.
+        Iterator<String> removedDomains = SortedIterators.difference(
+                appliedRules.getDenyDomains(packageName, appliedBlockedDomains),
+                rules.getDenyDomains(packageName, blockedDomains));
+        rejectedCount += pusher.push(packageName, removedDomains, false, false).size();
+
+        Iterator<String> addedDomains = SortedIterators.difference(
+                rules.getDenyDomains(packageName, blockedDomains),
+                appliedRules.getDenyDomains(packageName, appliedBlockedDomains));
+        rejectedCount += reject(rules, packageName, pusher.push(packageName, addedDomains, false, true), false);
+
+        Set<String> appliedAllowDomains = appliedRules.getAllowDomains(packageName);
+        Set<String> allowDomains = rules.getAllowDomains(packageName);
+        List<String> removedAllowDomains = new ArrayList<>(Sets.difference(appliedAllowDomains, allowDomains));
+        rejectedCount += pusher.push(packageName, removedAllowDomains.iterator(), true, false).size();
+        List<String> addedAllowDomains = new ArrayList<>(Sets.difference(allowDomains, appliedAllowDomains));
+        rejectedCount += reject(rules, packageName, pusher.push(packageName, addedAllowDomains.iterator(), true, true), true);
+        return rejectedCount;
+    }
 
-            List<DomainFilterRule> rules = new ArrayList<>();
-            rules.add(new DomainFilterRule(appIdentity, chunk, allowList));
-            firewallUtils.addDomainFilterRules(rules, handler);
+    private static int reject(AppliedDomainRules rules, String packageName, List<String> rejectedDomains, boolean allow) {
+        for (String domain : rejectedDomains) {
+            rules.reject(packageName, domain, allow);
         }
+        return rejectedDomains.size();
     }
 
     @Override
@@ -0,0 +1,202 @@
+package com.fusionjack.adhell3.blocker;
+
+import android.os.Handler;
+
+import com.fusionjack.adhell3.utils.LogUtils;
+import com.samsung.android.knox.AppIdentity;
+import com.samsung.android.knox.net.firewall.DomainFilterRule;
+import com.samsung.android.knox.net.firewall.Firewall;
+import com.samsung.android.knox.net.firewall.FirewallResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pushes domains to Knox chunk by chunk. The chunk size follows the time Knox takes per chunk, so that
+ * the chunks are as large as possible without long stalls or running into the IPC size limit.
+ * A chunk which Knox rejects is split in halves until the rejected domains are isolated, these domains
+ * are skipped and reported instead of failing the whole push. If Knox keeps rejecting domains, the push
+ * fails instead, as the problem is likely not the domains but Knox itself.
+ *
+ * The domains are read and turned into rules on a separate thread while Knox is busy with the previous
+ * chunk, only a few chunks are held in memory at a time. The thread is kept until {@link #shutdown()}.
+ */
+class DomainRulePusher {
+
+    private static final int INITIAL_CHUNK_SIZE = 5000;
+    private static final int MIN_CHUNK_SIZE = 500;
+    private static final int MAX_CHUNK_SIZE = 50000;
+    private static final long TARGET_CHUNK_MILLIS = 2000;
+    private static final int QUEUED_CHUNKS = 2;
+    private static final int MAX_CONSECUTIVE_REJECTIONS = 50;
+    private static final int MAX_REJECTIONS = 1000;
+    private static final Chunk END_OF_DOMAINS = new Chunk(Collections.emptyList(), Collections.emptyList());
+
+    private final Firewall firewall;
+    private final Handler handler;
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    // Read by the thread which prepares the chunks
+    private volatile int chunkSize = INITIAL_CHUNK_SIZE;
+    private int consecutiveRejections;
+    private int rejections;
+
+    DomainRulePusher(Firewall firewall, Handler handler) {
+        this.firewall = firewall;
+        this.handler = handler;
+    }
+
+    // Adds or removes the deny or allow domains of the package, returns the domains which Knox rejected
+    List<String> push(String packageName, Iterator<String> domains, boolean allow, boolean add) throws Exception {
+        AppIdentity appIdentity = new AppIdentity(packageName, null);
+        List<String> rejectedDomains = new ArrayList<>();
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        Future<Void> reader = executorService.submit(() -> readChunks(appIdentity, domains, allow, chunks));
+        try {
+            int start = 0;
+            Chunk chunk;
+            while ((chunk = chunks.take()) != END_OF_DOMAINS) {
+                start = push(appIdentity, chunk, allow, add, start, rejectedDomains);
+            }
+            try {
+                reader.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        } finally {
+            // Stops the reader if the push failed
+            reader.cancel(true);
+        }
+        return rejectedDomains;
+    }
+
+    // Stops the thread which prepares the chunks, the pusher cannot be used anymore
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private Void readChunks(AppIdentity appIdentity, Iterator<String> domains, boolean allow,
+                            BlockingQueue<Chunk> chunks) throws InterruptedException {
+        try {
+            while (domains.hasNext()) {
+                List<String> chunk = new ArrayList<>();
+                int size = chunkSize;
+                while (domains.hasNext() && chunk.size() < size) {
+                    chunk.add(domains.next());
+                }
+                chunks.put(new Chunk(chunk, createRules(appIdentity, chunk, allow)));
+            }
+        } catch (RuntimeException e) {
+            // Wakes up the push, which rethrows the exception. If the push has failed, it does not wait anymore.
+            chunks.put(END_OF_DOMAINS);
+            throw e;
+        }
+        chunks.put(END_OF_DOMAINS);
+        return null;
+    }
+
+    // Returns the number of domains which have been pushed so far
+    private int push(AppIdentity appIdentity, Chunk chunk, boolean allow, boolean add, int start,
+                     List<String> rejectedDomains) throws Exception {
+        String packageName = appIdentity.getPackageName();
+        int size = chunk.domains.size();
+        LogUtils.info("\n" + (add ? "Adding " : "Removing ") + start + " to " + (start + size) + " " +
+                    (allow ? "allowed" : "denied") + " domains of " + packageName + "...", handler);
+
+        long startTime = System.currentTimeMillis();
+        FirewallResponse response = send(appIdentity, chunk.domains, chunk.rules, add);
+        if (isSuccess(response)) {
+            LogUtils.info("Result: Success", handler);
+            consecutiveRejections = 0;
+            adjustChunkSize(size, System.currentTimeMillis() - startTime);
+        } else {
+            LogUtils.info("Result: Failed, retrying with smaller chunks...", handler);
+            chunkSize = Math.max(MIN_CHUNK_SIZE, chunkSize / 2);
+            split(appIdentity, chunk.domains, allow, add, response, rejectedDomains);
+        }
+        return start + size;
+    }
+
+    // Pushes both halves of a failed chunk, a single domain which still fails is rejected
+    private void split(AppIdentity appIdentity, List<String> domains, boolean allow, boolean add,
+                       FirewallResponse response, List<String> rejectedDomains) throws Exception {
+        if (domains.size() == 1) {
+            if (response == null) {
+                // Knox itself failed, not the domain
+                throw new Exception("There was no response from Knox Firewall");
+            }
+            LogUtils.info("Rejected domain: " + domains.get(0) + " (" + response.getMessage() + ")", handler);
+            rejectedDomains.add(domains.get(0));
+            if (++consecutiveRejections > MAX_CONSECUTIVE_REJECTIONS || ++rejections > MAX_REJECTIONS) {
+                throw new Exception("Knox Firewall rejected too many domains, the last one was " + domains.get(0));
+            }
+            return;
+        }
+
+        int middle = domains.size() / 2;
+        List<List<String>> halves = new ArrayList<>();
+        halves.add(domains.subList(0, middle));
+        halves.add(domains.subList(middle, domains.size()));
+        for (List<String> half : halves) {
+            FirewallResponse halfResponse = send(appIdentity, half, createRules(appIdentity, half, allow), add);
+            if (isSuccess(halfResponse)) {
+                consecutiveRejections = 0;
+            } else {
+                split(appIdentity, half, allow, add, halfResponse, rejectedDomains);
+            }
+        }
+    }
+
+    // Returns null if Knox did not respond. Knox reports rejected domains in the response, an exception
+    // such as a missing MDM permission affects every chunk and fails the push.
+    private FirewallResponse send(AppIdentity appIdentity, List<String> domains, List<DomainFilterRule> rules, boolean add) {
+        try {
+            FirewallResponse[] response = add ? firewall.addDomainFilterRules(rules) : firewall.removeDomainFilterRules(rules);
+            return response == null || response.length == 0 ? null : response[0];
+        } catch (RuntimeException e) {
+            LogUtils.error("Failed to push " + domains.size() + " domain filter rules of " +
+                    appIdentity.getPackageName() + " to Knox Firewall", e, handler);
+            throw e;
+        }
+    }
+
+    private static List<DomainFilterRule> createRules(AppIdentity appIdentity, List<String> domains, boolean allow) {
+        List<DomainFilterRule> rules = new ArrayList<>();
+        if (allow) {
+            rules.add(new DomainFilterRule(appIdentity, new ArrayList<>(), new ArrayList<>(domains)));
+        } else {
+            rules.add(new DomainFilterRule(appIdentity, new ArrayList<>(domains), new ArrayList<>()));
+        }
+        return rules;
+    }
+
+    private static boolean isSuccess(FirewallResponse response) {
+        return response != null && response.getResult() == FirewallResponse.Result.SUCCESS;
+    }
+
+    // Moves the chunk size towards the size which Knox pushes in the target time, at most by a factor of two per chunk
+    private void adjustChunkSize(int size, long millis) {
+        long targetSize = size * TARGET_CHUNK_MILLIS / Math.max(millis, 1);
+        targetSize = Math.min(targetSize, chunkSize * 2L);
+        targetSize = Math.max(targetSize, chunkSize / 2);
+        chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, targetSize));
+    }
+
+    // The domains of a chunk together with the rules which push them
+    private static class Chunk {
+        private final List<String> domains;
+        private final List<DomainFilterRule> rules;
+
+        private Chunk(List<String> domains, List<DomainFilterRule> rules) {
+            this.domains = domains;
+            this.rules = rules;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.fusionjack.adhell3.blocker;
+
+import android.os.Handler;
+
+import com.fusionjack.adhell3.utils.FirewallUtils;
+import com.fusionjack.adhell3.utils.LogUtils;
+import com.samsung.android.knox.net.firewall.Firewall;
+import com.samsung.android.knox.net.firewall.FirewallResponse;
+import com.samsung.android.knox.net.firewall.FirewallRule;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Collects the firewall rules which are not enabled in Knox yet, so that they are added in one call.
+ * A custom rule is identified by its package, ip and port on any network interface, a rule of a
+ * restricted app by its package and network interface. Knox uses "*" as ip and port if they are not set.
+ */
+class FirewallRuleBatch {
+
+    private final Set<String> addressKeys = new HashSet<>();
+    private final Set<String> interfaceKeys = new HashSet<>();
+    private final List<FirewallRule> rules = new ArrayList<>();
+    private final List<String> ruleNames = new ArrayList<>();
+
+    FirewallRuleBatch(FirewallRule[] enabledRules) {
+        if (enabledRules != null) {
+            for (FirewallRule enabledRule : enabledRules) {
+                String packageName = enabledRule.getApplication().getPackageName();
+                addressKeys.add(getKey(packageName, enabledRule.getIpAddress(), enabledRule.getPortNumber()));
+                interfaceKeys.add(getKey(packageName, enabledRule.getNetworkInterface()));
+            }
+        }
+    }
+
+    // Adds a custom rule, returns false if the rule is already enabled or added
+    boolean add(String name, String packageName, String ip, String port, FirewallRule... firewallRules) {
+        if (!addressKeys.add(getKey(packageName, ip, port))) {
+            return false;
+        }
+        add(name, firewallRules);
+        return true;
+    }
+
+    // Adds the rules of a restricted app, returns false if the app is already restricted on the network interface
+    boolean add(String name, String packageName, Firewall.NetworkInterface networkInterface, FirewallRule... firewallRules) {
+        if (!interfaceKeys.add(getKey(packageName, networkInterface))) {
+            return false;
+        }
+        add(name, firewallRules);
+        return true;
+    }
+
+    private void add(String name, FirewallRule[] firewallRules) {
+        for (FirewallRule firewallRule : firewallRules) {
+            rules.add(firewallRule);
+            ruleNames.add(name);
+        }
+    }
+
+    void apply(FirewallUtils firewallUtils, Handler handler) throws Exception {
+        if (rules.isEmpty()) {
+            return;
+        }
+
+        LogUtils.info("\nAdding " + rules.size() + " firewall rules...", handler);
+        FirewallResponse[] responses = firewallUtils.addFirewallRules(rules.toArray(new FirewallRule[0]), handler);
+        // A rule without a response has not been added either
+        int failedCount = Math.max(rules.size() - responses.length, 0);
+        for (int i = 0; i < responses.length && i < rules.size(); i++) {
+            if (responses[i] == null || responses[i].getResult() != FirewallResponse.Result.SUCCESS) {
+                LogUtils.info("Failed rule: " + ruleNames.get(i) +
+                        (responses[i] == null ? "" : " (" + responses[i].getMessage() + ")"), handler);
+                failedCount++;
+            }
+        }
+        if (failedCount > 0) {
+            Exception ex = new Exception(failedCount + " firewall rules could not be added");
+            LogUtils.error(ex.getMessage(), ex, handler);
+            throw ex;
+        }
+        LogUtils.info("Result: Success", handler);
+    }
+
+    private static String getKey(String packageName, String ip, String port) {
+        return (packageName + "|" + orAny(ip) + "|" + orAny(port)).toLowerCase(Locale.ROOT);
+    }
+
+    private static String getKey(String packageName, Firewall.NetworkInterface networkInterface) {
+        return packageName.toLowerCase(Locale.ROOT) + "|" + networkInterface;
+    }
+
+    private static String orAny(String value) {
+        return value == null || value.isEmpty() ? "*" : value;
+    }
+}
@@ -7,6 +7,7 @@ import android.content.pm.PackageManager;
 
 import com.fusionjack.adhell3.dagger.scope.AdhellApplicationScope;
 import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
 
 import dagger.Module;
 import dagger.Provides;
@@ -40,6 +41,12 @@ public class AppModule {
         return AppDatabase.getAppDatabase(mApplication.getApplicationContext());
     }
 
+    @Provides
+    @AdhellApplicationScope
+    BlocklistDatabase providesBlocklistDatabase() {
+        return BlocklistDatabase.getBlocklistDatabase(mApplication.getApplicationContext());
+    }
+
     @Provides
     @AdhellApplicationScope
     PackageManager providesPackageManager() {
@@ -1,33 +1,29 @@
 package com.fusionjack.adhell3.db;
 
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
 import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
+import android.support.annotation.NonNull;
 
 import com.fusionjack.adhell3.db.dao.AppInfoDao;
 import com.fusionjack.adhell3.db.dao.AppPermissionDao;
-import com.fusionjack.adhell3.db.dao.BlockUrlDao;
-import com.fusionjack.adhell3.db.dao.BlockUrlProviderDao;
 import com.fusionjack.adhell3.db.dao.DisabledPackageDao;
 import com.fusionjack.adhell3.db.dao.DnsPackageDao;
 import com.fusionjack.adhell3.db.dao.FirewallWhitelistedPackageDao;
 import com.fusionjack.adhell3.db.dao.PolicyPackageDao;
-import com.fusionjack.adhell3.db.dao.ReportBlockedUrlDao;
 import com.fusionjack.adhell3.db.dao.RestrictedPackageDao;
 import com.fusionjack.adhell3.db.dao.UserBlockUrlDao;
 import com.fusionjack.adhell3.db.dao.WhiteUrlDao;
 import com.fusionjack.adhell3.db.entity.AppInfo;
 import com.fusionjack.adhell3.db.entity.AppPermission;
-import com.fusionjack.adhell3.db.entity.BlockUrl;
-import com.fusionjack.adhell3.db.entity.BlockUrlProvider;
 import com.fusionjack.adhell3.db.entity.DisabledPackage;
 import com.fusionjack.adhell3.db.entity.DnsPackage;
 import com.fusionjack.adhell3.db.entity.FirewallWhitelistedPackage;
 import com.fusionjack.adhell3.db.entity.PolicyPackage;
-import com.fusionjack.adhell3.db.entity.ReportBlockedUrl;
 import com.fusionjack.adhell3.db.entity.RestrictedPackage;
 import com.fusionjack.adhell3.db.entity.UserBlockUrl;
 import com.fusionjack.adhell3.db.entity.WhiteUrl;
@@ -42,21 +38,26 @@ import com.fusionjack.adhell3.db.migration.Migration_21_22;
 import com.fusionjack.adhell3.db.migration.Migration_22_23;
 import com.fusionjack.adhell3.db.migration.Migration_23_24;
 import com.fusionjack.adhell3.db.migration.Migration_24_25;
+import com.fusionjack.adhell3.db.migration.Migration_25_26;
+import com.fusionjack.adhell3.db.migration.Migration_26_27;
+import com.fusionjack.adhell3.db.migration.Migration_27_28;
+import com.fusionjack.adhell3.db.migration.Migration_28_29;
+import com.fusionjack.adhell3.db.migration.Migration_29_30;
+import com.fusionjack.adhell3.db.migration.Migration_30_31;
+import com.fusionjack.adhell3.db.migration.Migration_31_32;
+import com.fusionjack.adhell3.db.migration.Migration_32_33;
 
 @Database(entities = {
         AppInfo.class,
         AppPermission.class,
-        BlockUrl.class,
-        BlockUrlProvider.class,
         DisabledPackage.class,
         RestrictedPackage.class,
         FirewallWhitelistedPackage.class,
         PolicyPackage.class,
-        ReportBlockedUrl.class,
         UserBlockUrl.class,
         WhiteUrl.class,
         DnsPackage.class
-}, version = 25, exportSchema = false)
+}, version = 33, exportSchema = false)
 
 public abstract class AppDatabase extends RoomDatabase {
     private static final Migration MIGRATION_14_15 = new Migration_14_15(14, 15);
@@ -70,6 +71,14 @@ public abstract class AppDatabase extends RoomDatabase {
     private static final Migration MIGRATION_22_23 = new Migration_22_23(22, 23);
     private static final Migration MIGRATION_23_24 = new Migration_23_24(23, 24);
     private static final Migration MIGRATION_24_25 = new Migration_24_25(24, 25);
+    private static final Migration MIGRATION_25_26 = new Migration_25_26(25, 26);
+    private static final Migration MIGRATION_26_27 = new Migration_26_27(26, 27);
+    private static final Migration MIGRATION_27_28 = new Migration_27_28(27, 28);
+    private static final Migration MIGRATION_28_29 = new Migration_28_29(28, 29);
+    private static final Migration MIGRATION_29_30 = new Migration_29_30(29, 30);
+    private static final Migration MIGRATION_30_31 = new Migration_30_31(30, 31);
+    private static final Migration MIGRATION_31_32 = new Migration_31_32(31, 32);
+    private static final Migration MIGRATION_32_33 = new Migration_32_33(32, 33);
     private static AppDatabase INSTANCE;
 
     public static final String DATABASE_FILE = "adhell-database";
@@ -90,6 +99,22 @@ public abstract class AppDatabase extends RoomDatabase {
                             .addMigrations(MIGRATION_22_23)
                             .addMigrations(MIGRATION_23_24)
                             .addMigrations(MIGRATION_24_25)
+                            .addMigrations(MIGRATION_25_26)
+                            .addMigrations(MIGRATION_26_27)
+                            .addMigrations(MIGRATION_27_28)
+                            .addMigrations(MIGRATION_28_29)
+                            .addMigrations(MIGRATION_29_30)
+                            .addMigrations(MIGRATION_30_31)
+                            .addMigrations(MIGRATION_31_32)
+                            .addMigrations(MIGRATION_32_33)
+                            .addCallback(new Callback() {
+                                @Override
+                                public void onOpen(@NonNull SupportSQLiteDatabase db) {
+                                    // The blocked domains which have been moved out leave a lot of free pages behind
+                                    DatabaseMaintenance.compact(db, DATABASE_FILE);
+                                }
+                            })
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
                             .build();
         }
         return INSTANCE;
@@ -99,12 +124,6 @@ public abstract class AppDatabase extends RoomDatabase {
         INSTANCE = null;
     }
 
-    public abstract BlockUrlDao blockUrlDao();
-
-    public abstract BlockUrlProviderDao blockUrlProviderDao();
-
-    public abstract ReportBlockedUrlDao reportBlockedUrlDao();
-
     public abstract AppInfoDao applicationInfoDao();
 
     public abstract WhiteUrlDao whiteUrlDao();
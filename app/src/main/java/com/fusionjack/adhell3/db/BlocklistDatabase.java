@@ -0,0 +1,83 @@
+package com.fusionjack.adhell3.db;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.Database;
+import android.arch.persistence.room.Room;
+import android.arch.persistence.room.RoomDatabase;
+import android.arch.persistence.room.migration.Migration;
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.fusionjack.adhell3.db.dao.BlockUrlDao;
+import com.fusionjack.adhell3.db.dao.BlockUrlProviderDao;
+import com.fusionjack.adhell3.db.dao.BlockUrlProviderStatsDao;
+import com.fusionjack.adhell3.db.dao.DomainDao;
+import com.fusionjack.adhell3.db.dao.ReportBlockedUrlDao;
+import com.fusionjack.adhell3.db.dao.ReportBlockedUrlStatsDao;
+import com.fusionjack.adhell3.db.entity.BlockUrl;
+import com.fusionjack.adhell3.db.entity.BlockUrlProvider;
+import com.fusionjack.adhell3.db.entity.BlockUrlProviderStats;
+import com.fusionjack.adhell3.db.entity.Domain;
+import com.fusionjack.adhell3.db.entity.ReportBlockedUrl;
+import com.fusionjack.adhell3.db.entity.ReportBlockedUrlStats;
+import com.fusionjack.adhell3.db.migration.BlocklistMigration_1_2;
+
+/**
+ * Providers with their domains and the reported blocked domains. These tables are bulk loaded and deleted,
+ * they are kept in their own file so that a provider update never holds the write lock of, or grows,
+ * the file with the settings and the app list which the UI reads.
+ */
+@Database(entities = {
+        BlockUrl.class,
+        BlockUrlProvider.class,
+        BlockUrlProviderStats.class,
+        Domain.class,
+        ReportBlockedUrl.class,
+        ReportBlockedUrlStats.class
+}, version = 2, exportSchema = false)
+
+public abstract class BlocklistDatabase extends RoomDatabase {
+    private static final Migration MIGRATION_1_2 = new BlocklistMigration_1_2(1, 2);
+
+    private static BlocklistDatabase INSTANCE;
+
+    public static final String DATABASE_FILE = "adhell-blocklist-database";
+
+    public static synchronized BlocklistDatabase getBlocklistDatabase(Context context) {
+        if (INSTANCE == null) {
+            INSTANCE =
+                    Room.databaseBuilder(context.getApplicationContext(),
+                            BlocklistDatabase.class, DATABASE_FILE)
+                            .addCallback(new Callback() {
+                                @Override
+                                public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                                    // Room only creates the tables of the entities
+                                    DomainSearchIndex.create(db);
+                                    SelectedDomainCounter.create(db);
+                                }
+                            })
+                            .addMigrations(MIGRATION_1_2)
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                            .build();
+        }
+        return INSTANCE;
+    }
+
+    // Gives the pages freed by large deletes back to the file system, must not be called within a transaction
+    public void compact() {
+        DatabaseMaintenance.compact(getOpenHelper().getWritableDatabase(), DATABASE_FILE);
+    }
+
+    public abstract BlockUrlDao blockUrlDao();
+
+    public abstract DomainDao domainDao();
+
+    public abstract BlockUrlProviderDao blockUrlProviderDao();
+
+    public abstract BlockUrlProviderStatsDao blockUrlProviderStatsDao();
+
+    public abstract ReportBlockedUrlDao reportBlockedUrlDao();
+
+    public abstract ReportBlockedUrlStatsDao reportBlockedUrlStatsDao();
+
+}
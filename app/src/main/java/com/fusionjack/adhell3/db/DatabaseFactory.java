@@ -4,7 +4,6 @@ import android.os.Environment;
 import android.util.JsonReader;
 import android.util.JsonWriter;
 
-import com.fusionjack.adhell3.db.entity.AppInfo;
 import com.fusionjack.adhell3.db.entity.AppPermission;
 import com.fusionjack.adhell3.db.entity.BlockUrlProvider;
 import com.fusionjack.adhell3.db.entity.DisabledPackage;
@@ -16,6 +15,7 @@ import com.fusionjack.adhell3.db.entity.WhiteUrl;
 import com.fusionjack.adhell3.utils.AdhellAppIntegrity;
 import com.fusionjack.adhell3.utils.AdhellFactory;
 import com.fusionjack.adhell3.utils.AppPreferences;
+import com.fusionjack.adhell3.utils.BlockUrlProviderCache;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -26,18 +26,22 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class DatabaseFactory {
     private static final String BACKUP_FILENAME = "adhell_backup.txt";
     private static DatabaseFactory instance;
     private AppDatabase appDatabase;
+    private BlocklistDatabase blocklistDatabase;
 
     public static final String MOBILE_RESTRICTED_TYPE = "mobile";
     public static final String WIFI_RESTRICTED_TYPE = "wifi";
 
     private DatabaseFactory() {
         this.appDatabase = AdhellFactory.getInstance().getAppDatabase();
+        this.blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
     }
 
     public static DatabaseFactory getInstance() {
@@ -56,7 +60,7 @@ public final class DatabaseFactory {
             writeDisabledPackages(writer, appDatabase);
             writeRestrictedPackages(writer, appDatabase);
             writeAppComponent(writer, appDatabase);
-            writeBlockUrlProviders(writer, appDatabase);
+            writeBlockUrlProviders(writer, blocklistDatabase);
             writeUserBlockUrls(writer, appDatabase);
             writeWhiteUrls(writer, appDatabase);
             writeCustomDNS(writer, appDatabase);
@@ -169,10 +173,10 @@ public final class DatabaseFactory {
         writer.endArray();
     }
 
-    private void writeBlockUrlProviders(JsonWriter writer, AppDatabase appDatabase) throws IOException {
+    private void writeBlockUrlProviders(JsonWriter writer, BlocklistDatabase blocklistDatabase) throws IOException {
         writer.name("BlockUrlProvider");
         writer.beginArray();
-        List<BlockUrlProvider> blockUrlProviders = appDatabase.blockUrlProviderDao().getAll2();
+        List<BlockUrlProvider> blockUrlProviders = blocklistDatabase.blockUrlProviderDao().getAll2();
         for (BlockUrlProvider provider: blockUrlProviders) {
             writer.beginObject();
             writer.name("url").value(provider.url);
@@ -258,16 +262,11 @@ public final class DatabaseFactory {
         }
         reader.endArray();
 
-        appDatabase.firewallWhitelistedPackageDao().deleteAll();
-        appDatabase.firewallWhitelistedPackageDao().insertAll(whitelistedPackages);
-
-        for (FirewallWhitelistedPackage whitelistedPackage : whitelistedPackages) {
-            AppInfo appInfo = appDatabase.applicationInfoDao().getAppByPackageName(whitelistedPackage.packageName);
-            if (appInfo != null) {
-                appInfo.adhellWhitelisted = true;
-                appDatabase.applicationInfoDao().update(appInfo);
-            }
-        }
+        appDatabase.runInTransaction(() -> {
+            appDatabase.firewallWhitelistedPackageDao().deleteAll();
+            appDatabase.firewallWhitelistedPackageDao().insertAll(whitelistedPackages);
+            appDatabase.applicationInfoDao().applyWhitelistedPackages();
+        });
     }
 
     private void readDisabledPackages(JsonReader reader) throws IOException {
@@ -295,16 +294,11 @@ public final class DatabaseFactory {
         }
         reader.endArray();
 
-        appDatabase.disabledPackageDao().deleteAll();
-        appDatabase.disabledPackageDao().insertAll(disabledPackages);
-
-        for (DisabledPackage disabledPackage : disabledPackages) {
-            AppInfo appInfo = appDatabase.applicationInfoDao().getAppByPackageName(disabledPackage.packageName);
-            if (appInfo != null) {
-                appInfo.disabled = true;
-                appDatabase.applicationInfoDao().update(appInfo);
-            }
-        }
+        appDatabase.runInTransaction(() -> {
+            appDatabase.disabledPackageDao().deleteAll();
+            appDatabase.disabledPackageDao().insertAll(disabledPackages);
+            appDatabase.applicationInfoDao().applyDisabledPackages();
+        });
     }
 
     private void readRestrictedPackages(JsonReader reader) throws IOException {
@@ -336,23 +330,11 @@ public final class DatabaseFactory {
         }
         reader.endArray();
 
-        appDatabase.restrictedPackageDao().deleteAll();
-        appDatabase.restrictedPackageDao().insertAll(restrictedPackages);
-
-        for (RestrictedPackage restrictedPackage : restrictedPackages) {
-            AppInfo appInfo = appDatabase.applicationInfoDao().getAppByPackageName(restrictedPackage.packageName);
-            if (appInfo != null) {
-                switch (restrictedPackage.type) {
-                    case MOBILE_RESTRICTED_TYPE:
-                        appInfo.mobileRestricted = true;
-                        break;
-                    case WIFI_RESTRICTED_TYPE:
-                        appInfo.wifiRestricted = true;
-                        break;
-                }
-                appDatabase.applicationInfoDao().update(appInfo);
-            }
-        }
+        appDatabase.runInTransaction(() -> {
+            appDatabase.restrictedPackageDao().deleteAll();
+            appDatabase.restrictedPackageDao().insertAll(restrictedPackages);
+            appDatabase.applicationInfoDao().applyRestrictedPackages(MOBILE_RESTRICTED_TYPE, WIFI_RESTRICTED_TYPE);
+        });
     }
 
     private void readAppComponent(JsonReader reader) throws IOException {
@@ -398,7 +380,13 @@ public final class DatabaseFactory {
         boolean selected = false;
         String policyPackageId = "";
 
-        appDatabase.blockUrlProviderDao().deleteAll();
+        // The cached host files are moved to the new ids of the restored providers
+        Map<String, Long> cachedProviderIds = new HashMap<>();
+        for (BlockUrlProvider provider : blocklistDatabase.blockUrlProviderDao().getAll2()) {
+            cachedProviderIds.put(provider.url, provider.id);
+        }
+        blocklistDatabase.blockUrlProviderDao().deleteAll();
+        blocklistDatabase.domainDao().deleteUnused();
 
         reader.beginArray();
         while (reader.hasNext()) {
@@ -422,9 +410,19 @@ public final class DatabaseFactory {
             provider.deletable = deletable;
             provider.selected = selected;
             provider.policyPackageId = policyPackageId;
-            provider.id = appDatabase.blockUrlProviderDao().insertAll(provider)[0];
+            provider.id = blocklistDatabase.blockUrlProviderDao().insertAll(provider)[0];
+
+            Long cachedProviderId = cachedProviderIds.remove(url);
+            if (cachedProviderId != null) {
+                BlockUrlProviderCache.move(cachedProviderId, provider.id);
+            }
         }
         reader.endArray();
+
+        for (long providerId : cachedProviderIds.values()) {
+            BlockUrlProviderCache.delete(providerId);
+        }
+        blocklistDatabase.compact();
     }
 
     private void readUserBlockUrls(JsonReader reader) throws IOException {
@@ -506,16 +504,11 @@ public final class DatabaseFactory {
         }
         reader.endArray();
 
-        appDatabase.dnsPackageDao().deleteAll();
-        appDatabase.dnsPackageDao().insertAll(dnsPackages);
-
-        for (DnsPackage dnsPackage : dnsPackages) {
-            AppInfo appInfo = appDatabase.applicationInfoDao().getAppByPackageName(dnsPackage.packageName);
-            if (appInfo != null) {
-                appInfo.hasCustomDns = true;
-                appDatabase.applicationInfoDao().update(appInfo);
-            }
-        }
+        appDatabase.runInTransaction(() -> {
+            appDatabase.dnsPackageDao().deleteAll();
+            appDatabase.dnsPackageDao().insertAll(dnsPackages);
+            appDatabase.applicationInfoDao().applyDnsPackages();
+        });
     }
 
     private void readDnsAddresses(JsonReader reader) throws IOException {
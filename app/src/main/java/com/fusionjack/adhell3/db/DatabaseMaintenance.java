@@ -0,0 +1,60 @@
+package com.fusionjack.adhell3.db;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.database.Cursor;
+import android.database.SQLException;
+
+import com.fusionjack.adhell3.utils.LogUtils;
+
+/**
+ * Keeps the database files from growing with the pages freed by large deletes. The files are switched to
+ * incremental auto vacuum by one full VACUUM, after that the free pages are released without rewriting the file.
+ */
+public final class DatabaseMaintenance {
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Free pages are only released once they are a quarter of the file
+    private static final int MIN_FREE_PAGE_PERCENT = 25;
+
+    private DatabaseMaintenance() {
+    }
+
+    public static void compact(SupportSQLiteDatabase database, String name) {
+        if (database.inTransaction()) {
+            return;
+        }
+
+        try {
+            long pageCount = queryLong(database, "PRAGMA page_count");
+            long freePageCount = queryLong(database, "PRAGMA freelist_count");
+            if (freePageCount * 100 < pageCount * MIN_FREE_PAGE_PERCENT) {
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            if (queryLong(database, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                // The pragma returns a row per freed page
+                try (Cursor cursor = database.query("PRAGMA incremental_vacuum")) {
+                    while (cursor.moveToNext()) {
+                        // Step through all the pages
+                    }
+                }
+            } else {
+                database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                database.execSQL("VACUUM");
+            }
+            LogUtils.info( "Released " + freePageCount + " of " + pageCount + " pages of " + name +
+                    " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (SQLException e) {
+            // The database is still usable, it is only larger than needed
+            LogUtils.error("Cannot compact " + name, e);
+        }
+    }
+
+    private static long queryLong(SupportSQLiteDatabase database, String sql) {
+        try (Cursor cursor = database.query(sql)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
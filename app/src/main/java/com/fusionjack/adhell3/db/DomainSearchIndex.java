@@ -0,0 +1,134 @@
+package com.fusionjack.adhell3.db;
+
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteStatement;
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * FTS4 index of the blocked domains for substring searches. Room doesn't know FTS tables, so the table is
+ * created and filled here. A domain is indexed as the trigrams of its labels, a search matches the trigrams
+ * of the search text and only checks the few candidates with LIKE instead of scanning all domains.
+ */
+public final class DomainSearchIndex {
+
+    public static final String INSERT_SQL = "INSERT INTO DomainSearch (docid, trigrams) VALUES (?, ?)";
+
+    // Maximum number of search results
+    private static final int SEARCH_LIMIT = 500;
+
+    private static final String SELECTED_PROVIDERS = "SELECT _id FROM BlockUrlProviders WHERE selected = 1";
+
+    private DomainSearchIndex() {
+    }
+
+    public static void create(SupportSQLiteDatabase database) {
+        // matchinfo=fts3 leaves out the document sizes, they are only needed for ranking by relevance
+        database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS DomainSearch USING fts4(trigrams, matchinfo=fts3)");
+
+        // The ids of the domains are the docids of the index
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS Domain_DomainSearch_delete AFTER DELETE ON Domain " +
+                "BEGIN DELETE FROM DomainSearch WHERE docid = old._id; END");
+    }
+
+    // Indexes the domains which are already stored
+    public static void build(SupportSQLiteDatabase database) throws IOException {
+        try (SupportSQLiteStatement insert = database.compileStatement(INSERT_SQL);
+             Cursor cursor = database.query("SELECT _id, url FROM Domain")) {
+            while (cursor.moveToNext()) {
+                insert.bindLong(1, cursor.getLong(0));
+                insert.bindString(2, getTrigrams(cursor.getString(1)));
+                insert.executeInsert();
+            }
+        }
+    }
+
+    // Space separated trigrams of every label, e.g. "ads.example.com" -> "ads exa xam amp mpl ple com".
+    // Dots and dashes are token separators for FTS, so trigrams never span them.
+    public static String getTrigrams(CharSequence text) {
+        StringBuilder trigrams = new StringBuilder();
+        int runStart = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i < text.length() && isTokenChar(text.charAt(i))) {
+                continue;
+            }
+            for (int start = runStart; start + 3 <= i; start++) {
+                if (trigrams.length() > 0) {
+                    trigrams.append(' ');
+                }
+                for (int j = start; j < start + 3; j++) {
+                    trigrams.append(Character.toLowerCase(text.charAt(j)));
+                }
+            }
+            runStart = i + 1;
+        }
+        return trigrams.toString();
+    }
+
+    // Domains of the provider, or of all selected providers, which contain the text. Exact matches come first,
+    // then domains which end or start with the text, shorter domains before longer ones.
+    public static List<String> search(BlocklistDatabase blocklistDatabase, String text, @Nullable Long providerId) {
+        text = text.toLowerCase(Locale.ROOT);
+        String trigrams = getTrigrams(text);
+        String pattern = escapeLike(text);
+
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        if (trigrams.isEmpty()) {
+            // Too short for the index
+            sql.append("SELECT Domain.url FROM Domain WHERE ");
+        } else {
+            sql.append("SELECT Domain.url FROM DomainSearch INNER JOIN Domain ON Domain._id = DomainSearch.docid ")
+                    .append("WHERE DomainSearch MATCH ? AND ");
+            args.add(trigrams);
+        }
+        sql.append("Domain.url LIKE ? ESCAPE '\\' ");
+        args.add('%' + pattern + '%');
+
+        sql.append("AND EXISTS (SELECT 1 FROM BlockUrl WHERE BlockUrl.domainId = Domain._id AND BlockUrl.urlProviderId ");
+        if (providerId == null) {
+            sql.append("IN (" + SELECTED_PROVIDERS + ")) ");
+        } else {
+            sql.append("= ?) ");
+            args.add(providerId);
+        }
+
+        sql.append("ORDER BY CASE WHEN Domain.url = ? THEN 0 WHEN Domain.url LIKE ? ESCAPE '\\' THEN 1 ")
+                .append("WHEN Domain.url LIKE ? ESCAPE '\\' THEN 2 ELSE 3 END, length(Domain.url), Domain.url ")
+                .append("LIMIT " + SEARCH_LIMIT);
+        args.add(text);
+        args.add('%' + pattern);
+        args.add(pattern + '%');
+
+        List<String> result = new ArrayList<>();
+        try (Cursor cursor = blocklistDatabase.query(new SimpleSQLiteQuery(sql.toString(), args.toArray()))) {
+            while (cursor.moveToNext()) {
+                result.add(cursor.getString(0));
+            }
+        }
+        return result;
+    }
+
+    private static String escapeLike(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%' || c == '_' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    // The simple FTS tokenizer only keeps ASCII letters and digits
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+}
@@ -0,0 +1,120 @@
+package com.fusionjack.adhell3.db;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteStatement;
+import android.database.Cursor;
+
+import com.fusionjack.adhell3.utils.LogUtils;
+
+import java.io.IOException;
+
+/**
+ * Providers, their domains and the reports which are still stored in the app database from before they had
+ * their own database. They are copied on the first start after the update, outside of the migration of the
+ * app database, and dropped once the copy is committed. The tables themselves mark whether this is pending.
+ */
+public final class LegacyBlocklistTables {
+
+    private LegacyBlocklistTables() {
+    }
+
+    public static synchronized void move(AppDatabase appDatabase, BlocklistDatabase blocklistDatabase) {
+        SupportSQLiteDatabase database = appDatabase.getOpenHelper().getWritableDatabase();
+        if (!exists(database)) {
+            return;
+        }
+
+        SupportSQLiteDatabase blocklist = blocklistDatabase.getOpenHelper().getWritableDatabase();
+        long start = System.currentTimeMillis();
+        blocklist.beginTransaction();
+        try {
+            // Anything stored before the tables have been copied is replaced, e.g. the default provider.
+            // This also applies to a copy which is repeated because the tables could not be dropped.
+            blocklist.execSQL("DELETE FROM BlockUrlProviders");
+            blocklist.execSQL("DELETE FROM Domain");
+            blocklist.execSQL("DELETE FROM ReportBlockedUrl");
+            blocklist.execSQL("DELETE FROM ReportBlockedUrlStats");
+
+            // The ids are kept, the cached host files are stored by provider id.
+            // The selected provider counts of the domains are counted again by the triggers.
+            copy(database, blocklist, "BlockUrlProviders", "SELECT * FROM BlockUrlProviders");
+            copy(database, blocklist, "BlockUrlProviderStats", "SELECT * FROM BlockUrlProviderStats");
+            copy(database, blocklist, "Domain", "SELECT _id, url, 0 AS selectedCount FROM Domain");
+            copy(database, blocklist, "BlockUrl", "SELECT * FROM BlockUrl");
+            copy(database, blocklist, "ReportBlockedUrl", "SELECT * FROM ReportBlockedUrl");
+            copy(database, blocklist, "ReportBlockedUrlStats", "SELECT * FROM ReportBlockedUrlStats");
+            DomainSearchIndex.build(blocklist);
+            blocklist.setTransactionSuccessful();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot build the domain search index", e);
+        } finally {
+            blocklist.endTransaction();
+        }
+        LogUtils.info( "Moved the blocked domains in " + (System.currentTimeMillis() - start) + " ms");
+
+        // The tables of the domains also drop their triggers
+        database.beginTransaction();
+        try {
+            database.execSQL("DROP TABLE IF EXISTS DomainSearch");
+            database.execSQL("DROP TABLE IF EXISTS SelectedDomainCount");
+            database.execSQL("DROP TABLE IF EXISTS BlockUrl");
+            database.execSQL("DROP TABLE IF EXISTS Domain");
+            database.execSQL("DROP TABLE IF EXISTS BlockUrlProviderStats");
+            database.execSQL("DROP TABLE IF EXISTS BlockUrlProviders");
+            database.execSQL("DROP TABLE IF EXISTS ReportBlockedUrl");
+            database.execSQL("DROP TABLE IF EXISTS ReportBlockedUrlStats");
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        DatabaseMaintenance.compact(database, AppDatabase.DATABASE_FILE);
+    }
+
+    private static boolean exists(SupportSQLiteDatabase database) {
+        try (Cursor cursor = database.query("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'BlockUrlProviders'")) {
+            return cursor.moveToFirst();
+        }
+    }
+
+    private static void copy(SupportSQLiteDatabase from, SupportSQLiteDatabase to, String table, String query) {
+        try (Cursor cursor = from.query(query)) {
+            String[] columns = cursor.getColumnNames();
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns[i]);
+            }
+            sql.append(") VALUES (");
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+
+            try (SupportSQLiteStatement insert = to.compileStatement(sql.toString())) {
+                while (cursor.moveToNext()) {
+                    for (int i = 0; i < columns.length; i++) {
+                        switch (cursor.getType(i)) {
+                            case Cursor.FIELD_TYPE_NULL:
+                                insert.bindNull(i + 1);
+                                break;
+                            case Cursor.FIELD_TYPE_INTEGER:
+                                insert.bindLong(i + 1, cursor.getLong(i));
+                                break;
+                            case Cursor.FIELD_TYPE_FLOAT:
+                                insert.bindDouble(i + 1, cursor.getDouble(i));
+                                break;
+                            case Cursor.FIELD_TYPE_BLOB:
+                                insert.bindBlob(i + 1, cursor.getBlob(i));
+                                break;
+                            default:
+                                insert.bindString(i + 1, cursor.getString(i));
+                                break;
+                        }
+                    }
+                    insert.executeInsert();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot copy " + table, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.fusionjack.adhell3.db;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.database.Cursor;
+
+/**
+ * Number of unique domains of the selected providers, kept up to date by triggers instead of counting the distinct
+ * domains whenever it is needed. Every domain counts the selected providers it is part of, the total only changes
+ * when a domain count changes from or to zero. The version changes together with the total, it tells whether
+ * the unique domains changed since they were read.
+ *
+ * Rows of BlockUrl and BlockUrlProviders must not be inserted with REPLACE: SQLite deletes the conflicting row
+ * without firing the delete triggers, as recursive triggers are off, and the count drifts.
+ */
+public final class SelectedDomainCounter {
+
+    private SelectedDomainCounter() {
+    }
+
+    // The selected provider counts of the domains must be computed already
+    public static void create(SupportSQLiteDatabase database) {
+        // The version starts at the current time, so that it is not reused if the table is created again
+        database.execSQL("CREATE TABLE IF NOT EXISTS SelectedDomainCount " +
+                "(_id INTEGER PRIMARY KEY NOT NULL, count INTEGER NOT NULL, version INTEGER NOT NULL)");
+        database.execSQL("INSERT OR REPLACE INTO SelectedDomainCount (_id, count, version) " +
+                "SELECT 1, COUNT(*), CAST(strftime('%s', 'now') AS INTEGER) * 1000 FROM Domain WHERE selectedCount > 0");
+
+        // Domains added to or removed from a selected provider
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS BlockUrl_SelectedDomainCount_insert AFTER INSERT ON BlockUrl " +
+                "WHEN (SELECT selected FROM BlockUrlProviders WHERE _id = new.urlProviderId) = 1 " +
+                "BEGIN UPDATE Domain SET selectedCount = selectedCount + 1 WHERE _id = new.domainId; END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS BlockUrl_SelectedDomainCount_delete AFTER DELETE ON BlockUrl " +
+                "WHEN (SELECT selected FROM BlockUrlProviders WHERE _id = old.urlProviderId) = 1 " +
+                "BEGIN UPDATE Domain SET selectedCount = selectedCount - 1 WHERE _id = old.domainId; END");
+
+        // The domains of a deleted provider are removed by the foreign key after the provider itself,
+        // so the delete trigger of BlockUrl cannot see whether the provider was selected
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS BlockUrlProviders_SelectedDomainCount_delete BEFORE DELETE ON BlockUrlProviders " +
+                "WHEN old.selected = 1 " +
+                "BEGIN UPDATE Domain SET selectedCount = selectedCount - 1 " +
+                "WHERE _id IN (SELECT domainId FROM BlockUrl WHERE urlProviderId = old._id); END");
+
+        // A provider is selected or deselected
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS BlockUrlProviders_SelectedDomainCount_update AFTER UPDATE OF selected ON BlockUrlProviders " +
+                "WHEN new.selected <> old.selected " +
+                "BEGIN UPDATE Domain SET selectedCount = selectedCount + (CASE WHEN new.selected = 1 THEN 1 ELSE -1 END) " +
+                "WHERE _id IN (SELECT domainId FROM BlockUrl WHERE urlProviderId = new._id); END");
+
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS Domain_SelectedDomainCount_update AFTER UPDATE OF selectedCount ON Domain " +
+                "WHEN (old.selectedCount = 0) <> (new.selectedCount = 0) " +
+                "BEGIN UPDATE SelectedDomainCount SET count = count + (CASE WHEN new.selectedCount = 0 THEN -1 ELSE 1 END), version = version + 1 " +
+                "WHERE _id = 1; END");
+    }
+
+    // Counts the selected providers of the domains which are already stored
+    public static void build(SupportSQLiteDatabase database) {
+        database.execSQL("UPDATE Domain SET selectedCount = (SELECT COUNT(*) FROM BlockUrl " +
+                "WHERE BlockUrl.domainId = Domain._id AND BlockUrl.urlProviderId IN (SELECT _id FROM BlockUrlProviders WHERE selected = 1))");
+    }
+
+    public static int getCount(BlocklistDatabase blocklistDatabase) {
+        try (Cursor cursor = blocklistDatabase.query("SELECT count FROM SelectedDomainCount WHERE _id = 1", null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    public static long getVersion(BlocklistDatabase blocklistDatabase) {
+        try (Cursor cursor = blocklistDatabase.query("SELECT version FROM SelectedDomainCount WHERE _id = 1", null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
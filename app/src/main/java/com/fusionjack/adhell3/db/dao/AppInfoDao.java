@@ -30,6 +30,34 @@ public interface AppInfoDao {
     @Update
     void update(AppInfo appInfo);
 
+    // Bulk updates, the flags are set from the packages stored for the policy
+    @Query("UPDATE AppInfo SET adhellWhitelisted = 1 WHERE packageName IN (SELECT packageName FROM FirewallWhitelistedPackage)")
+    void applyWhitelistedPackages();
+
+    @Query("UPDATE AppInfo SET disabled = 1 WHERE packageName IN (SELECT packageName FROM DisabledPackage)")
+    void applyDisabledPackages();
+
+    @Query("UPDATE AppInfo SET " +
+            "mobileRestricted = mobileRestricted OR packageName IN (SELECT packageName FROM RestrictedPackage WHERE type = :mobileType), " +
+            "wifiRestricted = wifiRestricted OR packageName IN (SELECT packageName FROM RestrictedPackage WHERE type = :wifiType) " +
+            "WHERE packageName IN (SELECT packageName FROM RestrictedPackage)")
+    void applyRestrictedPackages(String mobileType, String wifiType);
+
+    @Query("UPDATE AppInfo SET hasCustomDns = 1 WHERE packageName IN (SELECT packageName FROM DnsPackage)")
+    void applyDnsPackages();
+
+    @Query("UPDATE AppInfo SET adhellWhitelisted = 0 WHERE adhellWhitelisted = 1")
+    void clearWhitelisted();
+
+    @Query("UPDATE AppInfo SET disabled = 0 WHERE disabled = 1")
+    void clearDisabled();
+
+    @Query("UPDATE AppInfo SET mobileRestricted = 0 WHERE mobileRestricted = 1")
+    void clearMobileRestricted();
+
+    @Query("UPDATE AppInfo SET wifiRestricted = 0 WHERE wifiRestricted = 1")
+    void clearWifiRestricted();
+
 
     // Get app size
     @Query("SELECT COUNT(*) FROM AppInfo")
@@ -64,61 +92,28 @@ public interface AppInfoDao {
     @Query("SELECT * FROM AppInfo WHERE disabled = 1 ORDER BY appName ASC")
     List<AppInfo> getDisabledApps();
 
-    @Query("SELECT * FROM AppInfo ORDER BY disabled DESC, appName ASC")
-    List<AppInfo> getAppsInDisabledOrder();
-
-    @Query("SELECT * FROM AppInfo WHERE (appName LIKE :str OR packageName LIKE :str) ORDER BY disabled DESC, appName ASC")
-    List<AppInfo> getAppsInDisabledOrder(String str);
-
 
     // Mobile restricted apps (only enabled apps)
     @Query("SELECT * FROM AppInfo WHERE mobileRestricted = 1 AND disabled = 0")
     List<AppInfo> getMobileRestrictedApps();
 
-    @Query("SELECT * FROM AppInfo WHERE disabled = 0 ORDER BY mobileRestricted DESC, appName ASC")
-    List<AppInfo> getAppsInMobileRestrictedOrder();
-
-    @Query("SELECT * FROM AppInfo WHERE (appName LIKE :str OR packageName LIKE :str) AND disabled = 0 ORDER BY mobileRestricted DESC, appName ASC")
-    List<AppInfo> getAppsInMobileRestrictedOrder(String str);
-
 
     // Wifi restricted apps (only enabled apps)
     @Query("SELECT * FROM AppInfo WHERE wifiRestricted = 1 AND disabled = 0")
     List<AppInfo> getWifiRestrictedApps();
 
-    @Query("SELECT * FROM AppInfo WHERE disabled = 0 ORDER BY wifiRestricted DESC, appName ASC")
-    List<AppInfo> getAppsInWifiRestrictedOrder();
-
-    @Query("SELECT * FROM AppInfo WHERE (appName LIKE :str OR packageName LIKE :str) AND disabled = 0 ORDER BY wifiRestricted DESC, appName ASC")
-    List<AppInfo> getAppsInWifiRestrictedOrder(String str);
-
 
     // Whitelisted apps (only enabled apps)
     @Query("SELECT * FROM AppInfo WHERE adhellWhitelisted = 1 ORDER BY appName ASC")
     List<AppInfo> getWhitelistedApps();
 
-    @Query("SELECT * FROM AppInfo WHERE disabled = 0 ORDER BY adhellWhitelisted DESC, appName ASC")
-    List<AppInfo> getAppsInWhitelistedOrder();
-
-    @Query("SELECT * FROM AppInfo WHERE (appName LIKE :str OR packageName LIKE :str) AND disabled = 0 ORDER BY adhellWhitelisted DESC, appName ASC")
-    List<AppInfo> getAppsInWhitelistedOrder(String str);
-
 
     // User apps
     @Query("SELECT * FROM AppInfo WHERE system = 0 AND disabled = 0 ORDER BY appName ASC")
     List<AppInfo> getUserApps();
 
-    @Query("SELECT * FROM AppInfo WHERE (appName LIKE :str OR packageName LIKE :str) AND system = 0 AND disabled = 0 ORDER BY appName ASC")
-    List<AppInfo> getUserApps(String str);
-
 
     // Enabled apps
-    @Query("SELECT * FROM AppInfo WHERE disabled = 0 ORDER BY appName ASC")
-    List<AppInfo> getEnabledAppsAlphabetically();
-
-    @Query("SELECT * FROM AppInfo WHERE (appName LIKE :str OR packageName LIKE :str) AND disabled = 0 ORDER BY appName ASC")
-    List<AppInfo> getEnabledAppsAlphabetically(String str);
-
     @Query("SELECT * FROM AppInfo WHERE disabled = 0 ORDER BY installTime DESC")
     List<AppInfo> getEnabledAppsInTimeOrder();
 
@@ -130,12 +125,6 @@ public interface AppInfoDao {
     @Query("SELECT * FROM AppInfo WHERE hasCustomDns = 1 ORDER BY appName ASC")
     List<AppInfo> getDnsApps();
 
-    @Query("SELECT * FROM AppInfo WHERE disabled = 0 ORDER BY hasCustomDns DESC, appName ASC")
-    List<AppInfo> getAppsInDnsOrder();
-
-    @Query("SELECT * FROM AppInfo WHERE (appName LIKE :str OR packageName LIKE :str) AND disabled = 0 ORDER BY hasCustomDns DESC, appName ASC")
-    List<AppInfo> getAppsInDnsOrder(String str);
-
     @Query("SELECT * FROM AppInfo WHERE adhellWhitelisted = 1 OR disabled = 1 OR mobileRestricted = 1 OR wifiRestricted = 1 OR hasCustomDns = 1")
     List<AppInfo> getModifiedApps();
 }
\ No newline at end of file
@@ -15,21 +15,29 @@ public interface BlockUrlDao {
     @Query("SELECT * FROM BlockUrl")
     List<BlockUrl> getAll();
 
-    @Query("SELECT url FROM BlockUrl WHERE urlProviderId = :urlProviderId")
-    List<String> getUrlsByProviderId(long urlProviderId);
+    @Query("SELECT Domain.url FROM BlockUrl INNER JOIN Domain ON Domain._id = BlockUrl.domainId " +
+            "WHERE BlockUrl.urlProviderId = :urlProviderId ORDER BY BlockUrl.domainId LIMIT :limit OFFSET :offset")
+    List<String> getUrlsPageByProviderId(long urlProviderId, int offset, int limit);
 
-    @Query("DELETE FROM BlockUrl WHERE urlProviderId IN (Select _id from BlockUrlProviders WHERE selected = 1)")
-    void deleteBlockUrlsBySelectedProvider();
+    // Continues after the domain of the last url of the previous page, the primary key finds it without an offset
+    @Query("SELECT Domain.url FROM BlockUrl INNER JOIN Domain ON Domain._id = BlockUrl.domainId " +
+            "WHERE BlockUrl.urlProviderId = :urlProviderId AND BlockUrl.domainId > (SELECT _id FROM Domain WHERE url = :afterUrl) " +
+            "ORDER BY BlockUrl.domainId LIMIT :limit")
+    List<String> getUrlsPageByProviderIdAfter(long urlProviderId, String afterUrl, int limit);
+
+    @Query("SELECT COUNT(*) FROM BlockUrl WHERE urlProviderId = :urlProviderId")
+    int getCountByProviderId(long urlProviderId);
+
+    @Query("DELETE FROM BlockUrl WHERE urlProviderId = :urlProviderId AND domainId IN (:domainIds)")
+    void deleteByDomainIds(long urlProviderId, List<Long> domainIds);
 
     @Query("DELETE FROM BlockUrl")
     void deleteAll();
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    // Not REPLACE, it deletes the conflicting domain without the triggers of SelectedDomainCounter
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
     void insertAll(List<BlockUrl> blockUrls);
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
     void insert(BlockUrl... blockUrls);
-
-    @Query("SELECT * FROM BlockUrl WHERE urlProviderId = :urlProviderId AND url LIKE :url")
-    List<BlockUrl> getByUrl(long urlProviderId, String url);
-}
\ No newline at end of file
+}
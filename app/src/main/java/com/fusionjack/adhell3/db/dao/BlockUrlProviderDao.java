@@ -24,11 +24,12 @@ public interface BlockUrlProviderDao {
     @Query("SELECT * FROM BlockUrlProviders WHERE selected = :selected")
     List<BlockUrlProvider> getBlockUrlProviderBySelectedFlag(int selected);
 
-    @Query("SELECT DISTINCT url FROM BlockUrl WHERE urlProviderId IN (SELECT _id FROM BlockUrlProviders WHERE selected = 1) ORDER BY url ASC")
-    List<String> getUniqueBlockedUrls();
+    @Query("SELECT url FROM Domain WHERE EXISTS (SELECT 1 FROM BlockUrl WHERE BlockUrl.domainId = Domain._id AND BlockUrl.urlProviderId IN (SELECT _id FROM BlockUrlProviders WHERE selected = 1)) ORDER BY url ASC LIMIT :limit OFFSET :offset")
+    List<String> getUniqueBlockedUrlsPage(int offset, int limit);
 
-    @Query("SELECT COUNT(DISTINCT url) AS unique_count FROM BlockUrl WHERE urlProviderId IN (SELECT _id FROM BlockUrlProviders WHERE selected = 1)")
-    int getUniqueBlockedUrlsCount();
+    // Continues after the last url of the previous page, without skipping the rows in front of it like OFFSET does
+    @Query("SELECT url FROM Domain WHERE url > :afterUrl AND EXISTS (SELECT 1 FROM BlockUrl WHERE BlockUrl.domainId = Domain._id AND BlockUrl.urlProviderId IN (SELECT _id FROM BlockUrlProviders WHERE selected = 1)) ORDER BY url ASC LIMIT :limit")
+    List<String> getUniqueBlockedUrlsPageAfter(String afterUrl, int limit);
 
     @Query("SELECT * FROM BlockUrlProviders WHERE url = :url")
     BlockUrlProvider getByUrl(String url);
@@ -36,7 +37,8 @@ public interface BlockUrlProviderDao {
     @Query("SELECT * FROM BlockUrlProviders WHERE _id = :id")
     BlockUrlProvider getById(long id);
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    // Not REPLACE, it deletes the conflicting provider without the triggers of SelectedDomainCounter
+    @Insert(onConflict = OnConflictStrategy.ABORT)
     long[] insertAll(BlockUrlProvider... urlProviders);
 
     @Update
@@ -0,0 +1,27 @@
+package com.fusionjack.adhell3.db.dao;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.Query;
+
+import com.fusionjack.adhell3.db.entity.BlockUrlProviderStats;
+
+import java.util.List;
+
+@Dao
+public interface BlockUrlProviderStatsDao {
+
+    @Query("SELECT * FROM BlockUrlProviderStats WHERE _id IN (SELECT MAX(_id) FROM BlockUrlProviderStats GROUP BY providerId)")
+    LiveData<List<BlockUrlProviderStats>> getLatest();
+
+    @Query("SELECT * FROM BlockUrlProviderStats WHERE providerId = :providerId ORDER BY _id DESC")
+    List<BlockUrlProviderStats> getByProviderId(long providerId);
+
+    @Insert
+    void insert(BlockUrlProviderStats blockUrlProviderStats);
+
+    @Query("DELETE FROM BlockUrlProviderStats WHERE providerId = :providerId AND _id NOT IN " +
+            "(SELECT _id FROM BlockUrlProviderStats WHERE providerId = :providerId ORDER BY _id DESC LIMIT :keep)")
+    void deleteOlder(long providerId, int keep);
+}
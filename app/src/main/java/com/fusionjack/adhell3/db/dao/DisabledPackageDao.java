@@ -29,4 +29,7 @@ public interface DisabledPackageDao {
 
     @Query("DELETE FROM DisabledPackage")
     void deleteAll();
+
+    @Query("DELETE FROM DisabledPackage WHERE packageName NOT IN (SELECT packageName FROM AppInfo)")
+    void deleteNotInstalled();
 }
@@ -25,4 +25,7 @@ public interface DnsPackageDao {
 
     @Query("DELETE FROM DnsPackage")
     void deleteAll();
+
+    @Query("DELETE FROM DnsPackage WHERE packageName NOT IN (SELECT packageName FROM AppInfo)")
+    void deleteNotInstalled();
 }
@@ -0,0 +1,12 @@
+package com.fusionjack.adhell3.db.dao;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Query;
+
+@Dao
+public interface DomainDao {
+
+    // Domains which are no longer part of any provider
+    @Query("DELETE FROM Domain WHERE NOT EXISTS (SELECT 1 FROM BlockUrl WHERE BlockUrl.domainId = Domain._id)")
+    int deleteUnused();
+}
@@ -24,6 +24,9 @@ public interface FirewallWhitelistedPackageDao {
     @Query("DELETE FROM FirewallWhitelistedPackage")
     void deleteAll();
 
+    @Query("DELETE FROM FirewallWhitelistedPackage WHERE packageName NOT IN (SELECT packageName FROM AppInfo)")
+    void deleteNotInstalled();
+
     @Query("DELETE FROM FirewallWhitelistedPackage WHERE packageName = :packageName")
     void deleteByPackageName(String packageName);
 }
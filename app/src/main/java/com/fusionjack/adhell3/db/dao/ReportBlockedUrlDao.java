@@ -8,6 +8,7 @@ import android.arch.persistence.room.TypeConverters;
 
 import com.fusionjack.adhell3.db.DateConverter;
 import com.fusionjack.adhell3.db.entity.ReportBlockedUrl;
+import com.fusionjack.adhell3.db.entity.ReportBlockedUrlStats;
 
 import java.util.List;
 
@@ -21,11 +22,13 @@ public interface ReportBlockedUrlDao {
     @Insert
     void insertAll(List<ReportBlockedUrl> reportBlockedUrls);
 
-    @Query("SELECT * FROM ReportBlockedUrl WHERE blockDate BETWEEN :startDate AND :endDate ORDER BY _id DESC")
-    List<ReportBlockedUrl> getReportBlockUrlBetween(long startDate, long endDate);
+    // Hourly stats of the events which are not rolled up yet
+    @Query("SELECT (blockDate / 3600000) * 3600000 AS hour, IFNULL(packageName, '') AS packageName, IFNULL(url, '') AS url, " +
+            "COUNT(*) AS count, MAX(blockDate) AS lastBlockDate FROM ReportBlockedUrl GROUP BY 1, 2, 3")
+    List<ReportBlockedUrlStats> getHourlyStats();
 
-    @Query("DELETE FROM ReportBlockedUrl WHERE blockDate < :blockDate")
-    void deleteBefore(long blockDate);
+    @Query("DELETE FROM ReportBlockedUrl")
+    void deleteAll();
 
     @Query("SELECT * FROM ReportBlockedUrl ORDER BY blockDate DESC LIMIT 1")
     ReportBlockedUrl getLastBlockedDomain();
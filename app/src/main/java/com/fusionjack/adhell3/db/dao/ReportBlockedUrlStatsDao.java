@@ -0,0 +1,32 @@
+package com.fusionjack.adhell3.db.dao;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import com.fusionjack.adhell3.db.entity.ReportBlockedUrlStats;
+
+import java.util.List;
+
+@Dao
+public interface ReportBlockedUrlStatsDao {
+
+    // Returns -1 if there are already stats for the hour, the app and the domain
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insert(ReportBlockedUrlStats reportBlockedUrlStats);
+
+    @Query("UPDATE ReportBlockedUrlStats SET count = count + :count, lastBlockDate = MAX(lastBlockDate, :lastBlockDate) " +
+            "WHERE hour = :hour AND packageName = :packageName AND url = :url")
+    void add(long hour, String packageName, String url, int count, long lastBlockDate);
+
+    @Query("SELECT * FROM ReportBlockedUrlStats WHERE hour >= :startHour ORDER BY hour DESC, lastBlockDate DESC")
+    List<ReportBlockedUrlStats> getSince(long startHour);
+
+    @Query("DELETE FROM ReportBlockedUrlStats WHERE hour < :hour")
+    void deleteBefore(long hour);
+
+    // The events up to this time are rolled up already
+    @Query("SELECT MAX(lastBlockDate) FROM ReportBlockedUrlStats WHERE hour = (SELECT MAX(hour) FROM ReportBlockedUrlStats)")
+    long getLastBlockDate();
+}
@@ -32,4 +32,7 @@ public interface RestrictedPackageDao {
 
     @Query("DELETE FROM RestrictedPackage")
     void deleteAll();
+
+    @Query("DELETE FROM RestrictedPackage WHERE packageName NOT IN (SELECT packageName FROM AppInfo)")
+    void deleteNotInstalled();
 }
@@ -4,34 +4,37 @@ import android.arch.persistence.room.ColumnInfo;
 import android.arch.persistence.room.Entity;
 import android.arch.persistence.room.ForeignKey;
 import android.arch.persistence.room.Index;
-import android.arch.persistence.room.PrimaryKey;
-
-import com.fusionjack.adhell3.utils.BlockUrlPatternsMatch;
 
 
+// Links a provider to the domains of its host file
 @Entity(
         tableName = "BlockUrl",
-        indices = {@Index("urlProviderId")},
-        foreignKeys = @ForeignKey(
-                entity = BlockUrlProvider.class,
-                parentColumns = "_id",
-                childColumns = "urlProviderId",
-                onDelete = ForeignKey.CASCADE
-        )
+        primaryKeys = {"urlProviderId", "domainId"},
+        indices = {@Index("domainId")},
+        foreignKeys = {
+                @ForeignKey(
+                        entity = BlockUrlProvider.class,
+                        parentColumns = "_id",
+                        childColumns = "urlProviderId",
+                        onDelete = ForeignKey.CASCADE
+                ),
+                @ForeignKey(
+                        entity = Domain.class,
+                        parentColumns = "_id",
+                        childColumns = "domainId",
+                        onDelete = ForeignKey.CASCADE
+                )
+        }
 )
 public class BlockUrl {
-    @PrimaryKey(autoGenerate = true)
-    @ColumnInfo(name = "_id")
-    public long id;
-
-    @ColumnInfo(name = "url")
-    public String url;
-
     @ColumnInfo(name = "urlProviderId")
     public long urlProviderId;
 
-    public BlockUrl(String url, long urlProviderId) {
-        this.url = url;
+    @ColumnInfo(name = "domainId")
+    public long domainId;
+
+    public BlockUrl(long urlProviderId, long domainId) {
         this.urlProviderId = urlProviderId;
+        this.domainId = domainId;
     }
 }
@@ -2,7 +2,6 @@ package com.fusionjack.adhell3.db.entity;
 
 import android.arch.persistence.room.ColumnInfo;
 import android.arch.persistence.room.Entity;
-import android.arch.persistence.room.ForeignKey;
 import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
 import android.arch.persistence.room.TypeConverters;
@@ -12,10 +11,7 @@ import com.fusionjack.adhell3.db.DateConverter;
 import java.util.Date;
 
 @Entity(tableName = "BlockUrlProviders",
-        indices = {@Index("policyPackageId")},
-        foreignKeys = @ForeignKey(entity = PolicyPackage.class,
-                parentColumns = "id",
-                childColumns = "policyPackageId"))
+        indices = {@Index("policyPackageId")})
 @TypeConverters(DateConverter.class)
 public class BlockUrlProvider {
     @PrimaryKey(autoGenerate = true)
@@ -39,4 +35,15 @@ public class BlockUrlProvider {
 
     @ColumnInfo(name = "policyPackageId")
     public String policyPackageId;
+
+    // HTTP validators of the last download, used to skip unmodified providers
+    @ColumnInfo(name = "etag")
+    public String etag;
+
+    @ColumnInfo(name = "lastModified")
+    public String lastModified;
+
+    // Time the domains have last been stored, null if they have never been parsed, e.g. after a restore
+    @ColumnInfo(name = "domainsBuiltAt")
+    public Date domainsBuiltAt;
 }
@@ -0,0 +1,67 @@
+package com.fusionjack.adhell3.db.entity;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.ForeignKey;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+import android.arch.persistence.room.TypeConverters;
+
+import com.fusionjack.adhell3.db.DateConverter;
+
+import java.util.Date;
+
+// Metrics of a single update of a provider, a short history is kept per provider
+@Entity(tableName = "BlockUrlProviderStats",
+        indices = {@Index("providerId")},
+        foreignKeys = @ForeignKey(entity = BlockUrlProvider.class,
+                parentColumns = "_id",
+                childColumns = "providerId",
+                onDelete = ForeignKey.CASCADE))
+@TypeConverters(DateConverter.class)
+public class BlockUrlProviderStats {
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "_id")
+    public long id;
+
+    @ColumnInfo(name = "providerId")
+    public long providerId;
+
+    @ColumnInfo(name = "updatedAt")
+    public Date updatedAt;
+
+    // The host file has been read from the cache instead of being downloaded
+    @ColumnInfo(name = "cached")
+    public boolean cached;
+
+    // Bytes as transferred, i.e. before decompression
+    @ColumnInfo(name = "downloadBytes")
+    public long downloadBytes;
+
+    // Milliseconds spent connecting and waiting for data
+    @ColumnInfo(name = "downloadTime")
+    public long downloadTime;
+
+    // Milliseconds spent parsing, without the time spent waiting for data
+    @ColumnInfo(name = "parseTime")
+    public long parseTime;
+
+    @ColumnInfo(name = "writeTime")
+    public long writeTime;
+
+    @ColumnInfo(name = "lineCount")
+    public int lineCount;
+
+    // Rejected lines by reason
+    @ColumnInfo(name = "commentLineCount")
+    public int commentLineCount;
+
+    @ColumnInfo(name = "unsupportedLineCount")
+    public int unsupportedLineCount;
+
+    @ColumnInfo(name = "invalidLineCount")
+    public int invalidLineCount;
+
+    @ColumnInfo(name = "domainCount")
+    public int domainCount;
+}
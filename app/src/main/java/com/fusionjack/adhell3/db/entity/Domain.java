@@ -0,0 +1,28 @@
+package com.fusionjack.adhell3.db.entity;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+
+// Every blocked domain is stored once, the providers refer to it through BlockUrl
+@Entity(
+        tableName = "Domain",
+        indices = {@Index(value = "url", unique = true)}
+)
+public class Domain {
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "_id")
+    public long id;
+
+    @ColumnInfo(name = "url")
+    public String url;
+
+    // Number of selected providers which contain the domain, maintained by triggers
+    @ColumnInfo(name = "selectedCount")
+    public int selectedCount;
+
+    public Domain(String url) {
+        this.url = url;
+    }
+}
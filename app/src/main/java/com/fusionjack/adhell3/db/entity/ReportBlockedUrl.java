@@ -3,12 +3,13 @@ package com.fusionjack.adhell3.db.entity;
 import android.arch.persistence.room.ColumnInfo;
 import android.arch.persistence.room.Entity;
 import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
 import android.arch.persistence.room.TypeConverters;
 
 import com.fusionjack.adhell3.db.DateConverter;
 
-@Entity(tableName = "ReportBlockedUrl")
+@Entity(tableName = "ReportBlockedUrl", indices = {@Index("blockDate")})
 @TypeConverters(DateConverter.class)
 public class ReportBlockedUrl {
 
@@ -0,0 +1,31 @@
+package com.fusionjack.adhell3.db.entity;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.support.annotation.NonNull;
+
+// Blocked requests of an app to a domain within one hour, rolled up from the reported events
+@Entity(
+        tableName = "ReportBlockedUrlStats",
+        primaryKeys = {"hour", "packageName", "url"}
+)
+public class ReportBlockedUrlStats {
+    // Start of the hour in milliseconds
+    @ColumnInfo(name = "hour")
+    public long hour;
+
+    @NonNull
+    @ColumnInfo(name = "packageName")
+    public String packageName = "";
+
+    @NonNull
+    @ColumnInfo(name = "url")
+    public String url = "";
+
+    @ColumnInfo(name = "count")
+    public int count;
+
+    // Time of the latest blocked request within the hour
+    @ColumnInfo(name = "lastBlockDate")
+    public long lastBlockDate;
+}
@@ -0,0 +1,21 @@
+package com.fusionjack.adhell3.db.migration;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.migration.Migration;
+
+// Migration of the blocklist database, which is versioned separately from the app database
+public class BlocklistMigration_1_2 extends Migration {
+
+    public BlocklistMigration_1_2(int startVersion, int endVersion) {
+        super(startVersion, endVersion);
+    }
+
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+        database.execSQL("ALTER TABLE BlockUrlProviders ADD COLUMN domainsBuiltAt INTEGER");
+
+        // Providers which have been stored before, even without any domain, don't need to be rebuilt
+        database.execSQL("UPDATE BlockUrlProviders SET domainsBuiltAt = lastUpdated " +
+                "WHERE count > 0 OR _id IN (SELECT providerId FROM BlockUrlProviderStats)");
+    }
+}
@@ -0,0 +1,17 @@
+package com.fusionjack.adhell3.db.migration;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.migration.Migration;
+
+public class Migration_25_26 extends Migration {
+
+    public Migration_25_26(int startVersion, int endVersion) {
+        super(startVersion, endVersion);
+    }
+
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+        database.execSQL("ALTER TABLE BlockUrlProviders ADD COLUMN etag TEXT");
+        database.execSQL("ALTER TABLE BlockUrlProviders ADD COLUMN lastModified TEXT");
+    }
+}
@@ -0,0 +1,32 @@
+package com.fusionjack.adhell3.db.migration;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.migration.Migration;
+
+public class Migration_26_27 extends Migration {
+
+    public Migration_26_27(int startVersion, int endVersion) {
+        super(startVersion, endVersion);
+    }
+
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TABLE BlockUrlProviderStats " +
+                "(_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                "providerId INTEGER NOT NULL, " +
+                "updatedAt INTEGER, " +
+                "cached INTEGER NOT NULL, " +
+                "downloadBytes INTEGER NOT NULL, " +
+                "downloadTime INTEGER NOT NULL, " +
+                "parseTime INTEGER NOT NULL, " +
+                "writeTime INTEGER NOT NULL, " +
+                "lineCount INTEGER NOT NULL, " +
+                "commentLineCount INTEGER NOT NULL, " +
+                "unsupportedLineCount INTEGER NOT NULL, " +
+                "invalidLineCount INTEGER NOT NULL, " +
+                "domainCount INTEGER NOT NULL, " +
+                "FOREIGN KEY (providerId) REFERENCES BlockUrlProviders(_id) ON DELETE CASCADE)");
+        database.execSQL("CREATE INDEX index_BlockUrlProviderStats_providerId " +
+                "ON BlockUrlProviderStats (providerId)");
+    }
+}
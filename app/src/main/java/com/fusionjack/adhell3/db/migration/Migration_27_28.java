@@ -0,0 +1,34 @@
+package com.fusionjack.adhell3.db.migration;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.migration.Migration;
+
+public class Migration_27_28 extends Migration {
+
+    public Migration_27_28(int startVersion, int endVersion) {
+        super(startVersion, endVersion);
+    }
+
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+        // Every domain is stored once
+        database.execSQL("CREATE TABLE Domain " +
+                "(_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                "url TEXT)");
+        database.execSQL("CREATE UNIQUE INDEX index_Domain_url ON Domain (url)");
+        database.execSQL("INSERT OR IGNORE INTO Domain (url) SELECT url FROM BlockUrl");
+
+        // BlockUrl only links the providers to their domains
+        database.execSQL("CREATE TABLE BlockUrl_new " +
+                "(urlProviderId INTEGER NOT NULL, " +
+                "domainId INTEGER NOT NULL, " +
+                "PRIMARY KEY (urlProviderId, domainId), " +
+                "FOREIGN KEY (urlProviderId) REFERENCES BlockUrlProviders(_id) ON DELETE CASCADE, " +
+                "FOREIGN KEY (domainId) REFERENCES Domain(_id) ON DELETE CASCADE)");
+        database.execSQL("INSERT OR IGNORE INTO BlockUrl_new (urlProviderId, domainId) " +
+                "SELECT BlockUrl.urlProviderId, Domain._id FROM BlockUrl INNER JOIN Domain ON Domain.url = BlockUrl.url");
+        database.execSQL("DROP TABLE BlockUrl");
+        database.execSQL("ALTER TABLE BlockUrl_new RENAME TO BlockUrl");
+        database.execSQL("CREATE INDEX index_BlockUrl_domainId ON BlockUrl (domainId)");
+    }
+}
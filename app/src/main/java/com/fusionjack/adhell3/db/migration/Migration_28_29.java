@@ -0,0 +1,25 @@
+package com.fusionjack.adhell3.db.migration;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.migration.Migration;
+
+import com.fusionjack.adhell3.db.DomainSearchIndex;
+
+import java.io.IOException;
+
+public class Migration_28_29 extends Migration {
+
+    public Migration_28_29(int startVersion, int endVersion) {
+        super(startVersion, endVersion);
+    }
+
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+        try {
+            DomainSearchIndex.create(database);
+            DomainSearchIndex.build(database);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot build the domain search index", e);
+        }
+    }
+}
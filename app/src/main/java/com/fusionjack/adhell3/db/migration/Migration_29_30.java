@@ -0,0 +1,20 @@
+package com.fusionjack.adhell3.db.migration;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.migration.Migration;
+
+import com.fusionjack.adhell3.db.SelectedDomainCounter;
+
+public class Migration_29_30 extends Migration {
+
+    public Migration_29_30(int startVersion, int endVersion) {
+        super(startVersion, endVersion);
+    }
+
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+        database.execSQL("ALTER TABLE Domain ADD COLUMN selectedCount INTEGER NOT NULL DEFAULT 0");
+        SelectedDomainCounter.build(database);
+        SelectedDomainCounter.create(database);
+    }
+}
@@ -0,0 +1,21 @@
+package com.fusionjack.adhell3.db.migration;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.migration.Migration;
+
+import com.fusionjack.adhell3.db.SelectedDomainCounter;
+
+public class Migration_30_31 extends Migration {
+
+    public Migration_30_31(int startVersion, int endVersion) {
+        super(startVersion, endVersion);
+    }
+
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+        // The unique domain count gets a version, the count is computed again from the domains
+        database.execSQL("DROP TRIGGER IF EXISTS Domain_SelectedDomainCount_update");
+        database.execSQL("DROP TABLE IF EXISTS SelectedDomainCount");
+        SelectedDomainCounter.create(database);
+    }
+}
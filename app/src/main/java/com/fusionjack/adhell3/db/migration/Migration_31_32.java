@@ -0,0 +1,29 @@
+package com.fusionjack.adhell3.db.migration;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.migration.Migration;
+
+public class Migration_31_32 extends Migration {
+
+    public Migration_31_32(int startVersion, int endVersion) {
+        super(startVersion, endVersion);
+    }
+
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TABLE ReportBlockedUrlStats " +
+                "(hour INTEGER NOT NULL, " +
+                "packageName TEXT NOT NULL, " +
+                "url TEXT NOT NULL, " +
+                "count INTEGER NOT NULL, " +
+                "lastBlockDate INTEGER NOT NULL, " +
+                "PRIMARY KEY (hour, packageName, url))");
+        database.execSQL("CREATE INDEX index_ReportBlockedUrl_blockDate ON ReportBlockedUrl (blockDate)");
+
+        // The reported events are rolled up into hourly stats
+        database.execSQL("INSERT INTO ReportBlockedUrlStats (hour, packageName, url, count, lastBlockDate) " +
+                "SELECT (blockDate / 3600000) * 3600000, IFNULL(packageName, ''), IFNULL(url, ''), COUNT(*), MAX(blockDate) " +
+                "FROM ReportBlockedUrl GROUP BY 1, 2, 3");
+        database.execSQL("DELETE FROM ReportBlockedUrl");
+    }
+}
@@ -0,0 +1,17 @@
+package com.fusionjack.adhell3.db.migration;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.migration.Migration;
+
+public class Migration_32_33 extends Migration {
+
+    public Migration_32_33(int startVersion, int endVersion) {
+        super(startVersion, endVersion);
+    }
+
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+        // The providers, their domains and the reports move to their own database. The tables are kept here
+        // and copied on the first start, see LegacyBlocklistTables, a migration must not open another database.
+    }
+}
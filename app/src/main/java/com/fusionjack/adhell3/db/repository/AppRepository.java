@@ -1,9 +1,7 @@
 package com.fusionjack.adhell3.db.repository;
 
 import com.fusionjack.adhell3.BuildConfig;
-import com.fusionjack.adhell3.db.AppDatabase;
 import com.fusionjack.adhell3.db.entity.AppInfo;
-import com.fusionjack.adhell3.utils.AdhellFactory;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -21,55 +19,51 @@ public class AppRepository {
         DNS
     }
 
+    // The apps are read from the search index, ordered by the type flag first and then alphabetically
     public Single<List<AppInfo>> loadAppList(String text, Type type) {
         return Single.create(emitter -> {
-            AppDatabase appDatabase = AdhellFactory.getInstance().getAppDatabase();
-            String filterText = '%' + text + '%';
-            List<AppInfo> list = new ArrayList<>();
-            switch (type) {
-                case DISABLER:
-                    if (text.length() == 0) {
-                        list = appDatabase.applicationInfoDao().getAppsInDisabledOrder();
-                    }
-                    list = appDatabase.applicationInfoDao().getAppsInDisabledOrder(filterText);
-                    break;
-                case MOBILE_RESTRICTED:
-                    if (text.length() == 0) {
-                        list = appDatabase.applicationInfoDao().getAppsInMobileRestrictedOrder();
-                    }
-                    list = appDatabase.applicationInfoDao().getAppsInMobileRestrictedOrder(filterText);
-                    break;
-                case WIFI_RESTRICTED:
-                    if (text.length() == 0) {
-                        list = appDatabase.applicationInfoDao().getAppsInWifiRestrictedOrder();
-                    }
-                    list = appDatabase.applicationInfoDao().getAppsInWifiRestrictedOrder(filterText);
-                    break;
-                case WHITELISTED:
-                    if (text.length() == 0) {
-                        list = appDatabase.applicationInfoDao().getAppsInWhitelistedOrder();
-                    }
-                    list = appDatabase.applicationInfoDao().getAppsInWhitelistedOrder(filterText);
-                    break;
-                case COMPONENT:
-                    boolean showSystemApps = BuildConfig.SHOW_SYSTEM_APP_COMPONENT;
-                    if (text.length() == 0) {
-                        list = showSystemApps ?
-                                appDatabase.applicationInfoDao().getEnabledAppsAlphabetically() :
-                                appDatabase.applicationInfoDao().getUserApps();
-                    }
-                    list = showSystemApps ?
-                            appDatabase.applicationInfoDao().getEnabledAppsAlphabetically(filterText) :
-                            appDatabase.applicationInfoDao().getUserApps(filterText);
-                    break;
-                case DNS:
-                    if (text.length() == 0) {
-                        list = appDatabase.applicationInfoDao().getAppsInDnsOrder();
-                    }
-                    list = appDatabase.applicationInfoDao().getAppsInDnsOrder(filterText);
-                    break;
+            List<AppInfo> flaggedApps = new ArrayList<>();
+            List<AppInfo> otherApps = new ArrayList<>();
+            for (AppInfo app : AppSearchIndex.getInstance().find(text)) {
+                if (!isListed(app, type)) {
+                    continue;
+                }
+                if (isFlagged(app, type)) {
+                    flaggedApps.add(app);
+                } else {
+                    otherApps.add(app);
+                }
             }
-            emitter.onSuccess(list);
+            flaggedApps.addAll(otherApps);
+            emitter.onSuccess(flaggedApps);
         });
     }
+
+    private static boolean isListed(AppInfo app, Type type) {
+        switch (type) {
+            case DISABLER:
+                return true;
+            case COMPONENT:
+                return !app.disabled && (BuildConfig.SHOW_SYSTEM_APP_COMPONENT || !app.system);
+            default:
+                return !app.disabled;
+        }
+    }
+
+    private static boolean isFlagged(AppInfo app, Type type) {
+        switch (type) {
+            case DISABLER:
+                return app.disabled;
+            case MOBILE_RESTRICTED:
+                return app.mobileRestricted;
+            case WIFI_RESTRICTED:
+                return app.wifiRestricted;
+            case WHITELISTED:
+                return app.adhellWhitelisted;
+            case DNS:
+                return app.hasCustomDns;
+            default:
+                return false;
+        }
+    }
 }
@@ -0,0 +1,136 @@
+package com.fusionjack.adhell3.db.repository;
+
+import android.arch.persistence.room.InvalidationTracker;
+import android.support.annotation.NonNull;
+
+import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.db.entity.AppInfo;
+import com.fusionjack.adhell3.utils.AdhellFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory search over the app names and package names, so that typing in the app tabs does not
+ * query the whole AppInfo table for every character. The apps are kept in alphabetical order
+ * together with a trigram index of their names, both are read again once the AppInfo table changes.
+ */
+final class AppSearchIndex {
+
+    private static final char SEPARATOR = '\u0000';
+
+    private static AppSearchIndex instance;
+
+    private final AppDatabase appDatabase;
+    private volatile boolean stale = true;
+    private Snapshot snapshot;
+
+    private AppSearchIndex() {
+        appDatabase = AdhellFactory.getInstance().getAppDatabase();
+        appDatabase.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("AppInfo") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                stale = true;
+            }
+        });
+    }
+
+    static synchronized AppSearchIndex getInstance() {
+        if (instance == null) {
+            instance = new AppSearchIndex();
+        }
+        return instance;
+    }
+
+    // Apps whose name or package name contains the text, ignoring case, in alphabetical order
+    List<AppInfo> find(String text) {
+        Snapshot snapshot = getSnapshot();
+        String lowerCaseText = text.toLowerCase(Locale.ROOT);
+        if (lowerCaseText.isEmpty()) {
+            return snapshot.apps;
+        }
+
+        // Only the apps with the least common trigram of the text need to be compared
+        int[] candidates = null;
+        if (lowerCaseText.length() >= 3) {
+            for (int i = 0; i + 3 <= lowerCaseText.length(); i++) {
+                int[] postings = snapshot.postings.get(trigram(lowerCaseText, i));
+                if (postings == null) {
+                    return Collections.emptyList();
+                }
+                if (candidates == null || postings.length < candidates.length) {
+                    candidates = postings;
+                }
+            }
+        }
+
+        List<AppInfo> apps = new ArrayList<>();
+        int count = candidates == null ? snapshot.keys.length : candidates.length;
+        for (int i = 0; i < count; i++) {
+            int index = candidates == null ? i : candidates[i];
+            if (snapshot.keys[index].contains(lowerCaseText)) {
+                apps.add(snapshot.apps.get(index));
+            }
+        }
+        return apps;
+    }
+
+    private synchronized Snapshot getSnapshot() {
+        // Changes which are not yet announced to the observer, e.g. an update right before the list is loaded again
+        appDatabase.getInvalidationTracker().refreshVersionsSync();
+        if (stale || snapshot == null) {
+            stale = false;
+            snapshot = new Snapshot(appDatabase.applicationInfoDao().getAppsAlphabetically());
+        }
+        return snapshot;
+    }
+
+    private static long trigram(String s, int start) {
+        return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+    }
+
+    private static class Snapshot {
+        private final List<AppInfo> apps;
+        // Lower case app name and package name of every app
+        private final String[] keys;
+        // App indexes in ascending order per trigram
+        private final Map<Long, int[]> postings = new HashMap<>();
+
+        Snapshot(List<AppInfo> apps) {
+            this.apps = Collections.unmodifiableList(apps);
+            this.keys = new String[apps.size()];
+
+            Map<Long, List<Integer>> indexes = new HashMap<>();
+            for (int index = 0; index < keys.length; index++) {
+                AppInfo app = apps.get(index);
+                String appName = app.appName == null ? "" : app.appName;
+                String packageName = app.packageName == null ? "" : app.packageName;
+                keys[index] = (appName + SEPARATOR + packageName).toLowerCase(Locale.ROOT);
+                for (int i = 0; i + 3 <= keys[index].length(); i++) {
+                    List<Integer> appIndexes = indexes.get(trigram(keys[index], i));
+                    if (appIndexes == null) {
+                        appIndexes = new ArrayList<>();
+                        indexes.put(trigram(keys[index], i), appIndexes);
+                    }
+                    if (appIndexes.isEmpty() || appIndexes.get(appIndexes.size() - 1) != index) {
+                        appIndexes.add(index);
+                    }
+                }
+            }
+
+            for (Map.Entry<Long, List<Integer>> entry : indexes.entrySet()) {
+                List<Integer> appIndexes = entry.getValue();
+                int[] array = new int[appIndexes.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = appIndexes.get(i);
+                }
+                postings.put(entry.getKey(), array);
+            }
+        }
+    }
+}
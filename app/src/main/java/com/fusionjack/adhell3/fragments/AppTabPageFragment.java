@@ -25,8 +25,6 @@ import com.fusionjack.adhell3.utils.AdhellFactory;
 import com.fusionjack.adhell3.utils.AppPreferences;
 import com.samsung.android.knox.application.ApplicationPolicy;
 
-import java.util.List;
-
 public class AppTabPageFragment extends AppFragment {
     private static final String ARG_PAGE = "page";
     private int page;
@@ -149,42 +147,36 @@ public class AppTabPageFragment extends AppFragment {
                     switch (page) {
                         case PACKAGE_DISABLER_PAGE:
                             ApplicationPolicy appPolicy = AdhellFactory.getInstance().getAppPolicy();
-                            List<AppInfo> disabledAppList = appDatabase.applicationInfoDao().getDisabledApps();
-                            for (AppInfo app : disabledAppList) {
-                                app.disabled = false;
-                                if (appPolicy != null) {
+                            if (appPolicy != null) {
+                                for (AppInfo app : appDatabase.applicationInfoDao().getDisabledApps()) {
                                     appPolicy.setEnableApplication(app.packageName);
                                 }
-                                appDatabase.applicationInfoDao().update(app);
                             }
-                            appDatabase.disabledPackageDao().deleteAll();
+                            appDatabase.runInTransaction(() -> {
+                                appDatabase.applicationInfoDao().clearDisabled();
+                                appDatabase.disabledPackageDao().deleteAll();
+                            });
                             break;
 
                         case MOBILE_RESTRICTER_PAGE:
-                            List<AppInfo> mobileAppList = appDatabase.applicationInfoDao().getMobileRestrictedApps();
-                            for (AppInfo app : mobileAppList) {
-                                app.mobileRestricted = false;
-                                appDatabase.applicationInfoDao().update(app);
-                            }
-                            appDatabase.restrictedPackageDao().deleteByType(DatabaseFactory.MOBILE_RESTRICTED_TYPE);
+                            appDatabase.runInTransaction(() -> {
+                                appDatabase.applicationInfoDao().clearMobileRestricted();
+                                appDatabase.restrictedPackageDao().deleteByType(DatabaseFactory.MOBILE_RESTRICTED_TYPE);
+                            });
                             break;
 
                         case WIFI_RESTRICTER_PAGE:
-                            List<AppInfo> wifiAppList = appDatabase.applicationInfoDao().getWifiRestrictedApps();
-                            for (AppInfo app : wifiAppList) {
-                                app.wifiRestricted = false;
-                                appDatabase.applicationInfoDao().update(app);
-                            }
-                            appDatabase.restrictedPackageDao().deleteByType(DatabaseFactory.WIFI_RESTRICTED_TYPE);
+                            appDatabase.runInTransaction(() -> {
+                                appDatabase.applicationInfoDao().clearWifiRestricted();
+                                appDatabase.restrictedPackageDao().deleteByType(DatabaseFactory.WIFI_RESTRICTED_TYPE);
+                            });
                             break;
 
                         case WHITELIST_PAGE:
-                            List<AppInfo> whitelistedAppList = appDatabase.applicationInfoDao().getWhitelistedApps();
-                            for (AppInfo app : whitelistedAppList) {
-                                app.adhellWhitelisted = false;
-                                appDatabase.applicationInfoDao().update(app);
-                            }
-                            appDatabase.firewallWhitelistedPackageDao().deleteAll();
+                            appDatabase.runInTransaction(() -> {
+                                appDatabase.applicationInfoDao().clearWhitelisted();
+                                appDatabase.firewallWhitelistedPackageDao().deleteAll();
+                            });
                             break;
                     }
                     loadAppList(type);
@@ -34,7 +34,7 @@ import com.fusionjack.adhell3.blocker.ContentBlocker;
 import com.fusionjack.adhell3.blocker.ContentBlocker56;
 import com.fusionjack.adhell3.db.AppDatabase;
 import com.fusionjack.adhell3.db.entity.AppPermission;
-import com.fusionjack.adhell3.db.entity.ReportBlockedUrl;
+import com.fusionjack.adhell3.db.entity.ReportBlockedUrlStats;
 import com.fusionjack.adhell3.db.entity.WhiteUrl;
 import com.fusionjack.adhell3.dialogfragment.FirewallDialogFragment;
 import com.fusionjack.adhell3.utils.AdhellAppIntegrity;
@@ -121,6 +121,12 @@ public class HomeTabFragment extends Fragment {
             LogUtils.info( "Domain switch button has been clicked");
             new SetFirewallAsyncTask(true, this, fragmentManager, getContext()).execute();
         });
+        domainStatusTextView.setOnClickListener(v -> {
+            if (!contentBlocker.isDomainRuleEmpty() && AppPreferences.getInstance().isDomainRulesOutdated()) {
+                LogUtils.info( "Domain rule changes are applied");
+                new SetFirewallAsyncTask(true, true, this, fragmentManager, getContext()).execute();
+            }
+        });
         firewallSwitch.setOnClickListener(v -> {
             LogUtils.info( "Firewall switch button has been clicked");
             new SetFirewallAsyncTask(false, this, fragmentManager, getContext()).execute();
@@ -144,6 +150,7 @@ public class HomeTabFragment extends Fragment {
 
         AsyncTask.execute(() -> {
             AdhellAppIntegrity adhellAppIntegrity = AdhellAppIntegrity.getInstance();
+            adhellAppIntegrity.moveBlocklistTables();
             adhellAppIntegrity.checkDefaultPolicyExists();
             adhellAppIntegrity.checkAdhellStandardPackage();
             adhellAppIntegrity.fillPackageDb();
@@ -168,7 +175,8 @@ public class HomeTabFragment extends Fragment {
             domainStatusTextView.setText(R.string.domain_rules_disabled);
             domainSwitch.setChecked(false);
         } else {
-            domainStatusTextView.setText(R.string.domain_rules_enabled);
+            domainStatusTextView.setText(AppPreferences.getInstance().isDomainRulesOutdated() ?
+                    R.string.domain_rules_outdated : R.string.domain_rules_enabled);
             domainSwitch.setChecked(true);
         }
 
@@ -397,12 +405,20 @@ public class HomeTabFragment extends Fragment {
         private ContentBlocker contentBlocker;
         private Handler handler;
         private boolean isDomain;
+        private boolean isApplyingChanges;
         private boolean isDomainRuleEmpty;
         private boolean isFirewallRuleEmpty;
         private WeakReference<Context> contextReference;
 
         SetFirewallAsyncTask(boolean isDomain, HomeTabFragment parentFragment, FragmentManager fragmentManager, Context context) {
+            this(isDomain, false, parentFragment, fragmentManager, context);
+        }
+
+        // Pushes the changes to the enabled domain rules instead of toggling them
+        SetFirewallAsyncTask(boolean isDomain, boolean isApplyingChanges, HomeTabFragment parentFragment,
+                             FragmentManager fragmentManager, Context context) {
             this.isDomain = isDomain;
+            this.isApplyingChanges = isApplyingChanges;
             this.parentFragment = parentFragment;
             this.fragmentManager = fragmentManager;
             this.contentBlocker = ContentBlocker56.getInstance();
@@ -420,7 +436,9 @@ public class HomeTabFragment extends Fragment {
 
         @Override
         protected void onPreExecute() {
-            if (isDomain) {
+            if (isDomain && isApplyingChanges) {
+                fragment = FirewallDialogFragment.newInstance("Applying Domain Rule Changes");
+            } else if (isDomain) {
                 fragment = FirewallDialogFragment.newInstance(
                         isDomainRuleEmpty ? "Enabling Domain Rules" : "Disabling Domain Rules");
             } else {
@@ -433,8 +451,18 @@ public class HomeTabFragment extends Fragment {
 
         @Override
         protected Void doInBackground(Void... args) {
+            // The handler is kept until this push is finished
+            synchronized (contentBlocker) {
+                setFirewall();
+            }
+            return null;
+        }
+
+        private void setFirewall() {
             contentBlocker.setHandler(handler);
-            if (isDomain) {
+            if (isDomain && isApplyingChanges) {
+                contentBlocker.applyDomainRuleChanges();
+            } else if (isDomain) {
                 if (isDomainRuleEmpty) {
                     SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(contextReference.get());
                     boolean updateProviders = preferences.getBoolean(SettingsFragment.UPDATE_PROVIDERS_PREFERENCE, false);
@@ -452,7 +480,6 @@ public class HomeTabFragment extends Fragment {
                     contentBlocker.disableFirewallRules();
                 }
             }
-            return null;
         }
 
         @Override
@@ -462,7 +489,7 @@ public class HomeTabFragment extends Fragment {
         }
     }
 
-    private static class RefreshAsyncTask extends AsyncTask<Void, Void, List<ReportBlockedUrl>> {
+    private static class RefreshAsyncTask extends AsyncTask<Void, Void, List<ReportBlockedUrlStats>> {
         private WeakReference<Context> contextReference;
 
         RefreshAsyncTask(Context context) {
@@ -470,12 +497,12 @@ public class HomeTabFragment extends Fragment {
         }
 
         @Override
-        protected List<ReportBlockedUrl> doInBackground(Void... voids) {
+        protected List<ReportBlockedUrlStats> doInBackground(Void... voids) {
             return FirewallUtils.getInstance().getReportBlockedUrl();
         }
 
         @Override
-        protected void onPostExecute(List<ReportBlockedUrl> reportBlockedUrls) {
+        protected void onPostExecute(List<ReportBlockedUrlStats> reportBlockedUrls) {
             Context context = contextReference.get();
             if (context != null) {
                 ListView listView = ((Activity) context).findViewById(R.id.blockedDomainsListView);
@@ -504,6 +531,7 @@ public class HomeTabFragment extends Fragment {
                                     final String blockedUrl = reportBlockedUrls.get(position).url;
                                     WhiteUrl whiteUrl = new WhiteUrl(blockedUrl, new Date());
                                     appDatabase.whiteUrlDao().insert(whiteUrl);
+                                    AppPreferences.getInstance().setDomainRulesOutdated(true);
                                 })
                             )
                             .setNegativeButton(android.R.string.no, null).show();
@@ -512,8 +540,12 @@ public class HomeTabFragment extends Fragment {
 
                 TextView infoTextView = ((Activity) context).findViewById(R.id.infoTextView);
                 if (infoTextView != null) {
+                    int blockedCount = 0;
+                    for (ReportBlockedUrlStats reportBlockedUrl : reportBlockedUrls) {
+                        blockedCount += reportBlockedUrl.count;
+                    }
                     infoTextView.setText(String.format("%s%s",
-                            context.getString(R.string.last_day_blocked), String.valueOf(reportBlockedUrls.size())));
+                            context.getString(R.string.last_day_blocked), String.valueOf(blockedCount)));
                 }
 
                 SwipeRefreshLayout swipeContainer = ((Activity) context).findViewById(R.id.swipeContainer);
@@ -534,10 +566,10 @@ public class HomeTabFragment extends Fragment {
 
         @Override
         protected Void doInBackground(Void... voids) {
-            List<ReportBlockedUrl> domains = FirewallUtils.getInstance().getReportBlockedUrl();
+            List<ReportBlockedUrlStats> domains = FirewallUtils.getInstance().getReportBlockedUrl();
             try {
                 Set<String> set = new HashSet<>();
-                for (ReportBlockedUrl domain : domains) {
+                for (ReportBlockedUrlStats domain : domains) {
                     set.add(domain.url);
                 }
 
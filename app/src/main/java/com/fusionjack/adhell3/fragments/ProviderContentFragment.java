@@ -17,7 +17,8 @@ import android.widget.ListView;
 import android.widget.TextView;
 
 import com.fusionjack.adhell3.R;
-import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.adapter.BlockedUrlPagedAdapter;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
 import com.fusionjack.adhell3.utils.AdhellFactory;
 import com.fusionjack.adhell3.utils.BlockUrlUtils;
 
@@ -77,38 +78,45 @@ public class ProviderContentFragment extends Fragment {
             @Override
             public boolean onQueryTextChange(String text) {
                 searchText = text;
-                new FilterUrlAsyncTask(text, providerId, getContext()).execute();
+                if (text.isEmpty()) {
+                    new LoadBlockedUrlAsyncTask(getContext(), providerId).execute();
+                } else {
+                    new FilterUrlAsyncTask(text, providerId, getContext()).execute();
+                }
                 return false;
             }
         });
     }
 
-    private static class LoadBlockedUrlAsyncTask extends AsyncTask<Void, Void, List<String>> {
+    // Only the number of domains is loaded up front, the domains themselves are loaded page by page while scrolling
+    private static class LoadBlockedUrlAsyncTask extends AsyncTask<Void, Void, Integer> {
         private WeakReference<Context> contextReference;
-        private AppDatabase appDatabase;
+        private BlocklistDatabase blocklistDatabase;
         private Long providerId;
 
         LoadBlockedUrlAsyncTask(Context context, Long providerId) {
             this.contextReference = new WeakReference<>(context);
-            this.appDatabase = AdhellFactory.getInstance().getAppDatabase();
+            this.blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
             this.providerId = providerId;
         }
 
         @Override
-        protected List<String> doInBackground(Void... o) {
+        protected Integer doInBackground(Void... o) {
             return providerId == null ?
-                    BlockUrlUtils.getAllBlockedUrls(appDatabase) :
-                    BlockUrlUtils.getBlockedUrls(providerId, appDatabase);
+                    BlockUrlUtils.getAllBlockedUrlsCount(blocklistDatabase) :
+                    BlockUrlUtils.getBlockedUrlsCount(providerId, blocklistDatabase);
         }
 
         @Override
-        protected void onPostExecute(List<String> blockedUrls) {
+        protected void onPostExecute(Integer blockedUrlsCount) {
             Context context = contextReference.get();
             if (context != null) {
                 ListView listView = ((Activity)context).findViewById(R.id.blocked_url_list);
                 if (listView != null) {
-                    ArrayAdapter<String> itemsAdapter = new ArrayAdapter<>(context, android.R.layout.simple_list_item_1, blockedUrls);
-                    listView.setAdapter(itemsAdapter);
+                    BlockedUrlPagedAdapter.PageLoader pageLoader = providerId == null ?
+                            (offset, limit, afterUrl) -> BlockUrlUtils.getAllBlockedUrlsPage(offset, limit, afterUrl, blocklistDatabase) :
+                            (offset, limit, afterUrl) -> BlockUrlUtils.getBlockedUrlsPage(providerId, offset, limit, afterUrl, blocklistDatabase);
+                    listView.setAdapter(new BlockedUrlPagedAdapter(blockedUrlsCount, pageLoader));
                 }
 
                 SwipeRefreshLayout swipeContainer = ((Activity) context).findViewById(R.id.providerListSwipeContainer);
@@ -119,7 +127,7 @@ public class ProviderContentFragment extends Fragment {
                 TextView totalBlockedUrls = ((Activity)context).findViewById(R.id.total_blocked_urls);
                 if (totalBlockedUrls != null) {
                     totalBlockedUrls.setText(String.format("%s%s",
-                            context.getString(R.string.total_domains), String.valueOf(blockedUrls.size())));
+                            context.getString(R.string.total_domains), String.valueOf(blockedUrlsCount)));
                 }
             }
         }
@@ -127,7 +135,7 @@ public class ProviderContentFragment extends Fragment {
 
     private static class FilterUrlAsyncTask extends AsyncTask<Void, Void, List<String>> {
         private WeakReference<Context> contextReference;
-        private AppDatabase appDatabase;
+        private BlocklistDatabase blocklistDatabase;
         private String text;
         private Long providerId;
 
@@ -135,18 +143,14 @@ public class ProviderContentFragment extends Fragment {
             this.text = text;
             this.providerId = providerId;
             this.contextReference = new WeakReference<>(context);
-            this.appDatabase = AdhellFactory.getInstance().getAppDatabase();
+            this.blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
         }
 
         @Override
         protected List<String> doInBackground(Void... o) {
-            final String filterText = '%' + text + '%';
-            if (providerId == null) {
-                return text.isEmpty() ? BlockUrlUtils.getAllBlockedUrls(appDatabase) :
-                        BlockUrlUtils.getFilteredBlockedUrls(filterText, appDatabase);
-            }
-            return text.isEmpty() ? BlockUrlUtils.getBlockedUrls(providerId, appDatabase) :
-                    BlockUrlUtils.getFilteredBlockedUrls(filterText, providerId, appDatabase);
+            return providerId == null ?
+                    BlockUrlUtils.getFilteredBlockedUrls(text, blocklistDatabase) :
+                    BlockUrlUtils.getFilteredBlockedUrls(text, providerId, blocklistDatabase);
         }
 
         @Override
@@ -22,13 +22,16 @@ import android.widget.Toast;
 
 import com.fusionjack.adhell3.R;
 import com.fusionjack.adhell3.adapter.BlockUrlProviderAdapter;
-import com.fusionjack.adhell3.db.AppDatabase;
-import com.fusionjack.adhell3.db.entity.BlockUrl;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
 import com.fusionjack.adhell3.db.entity.BlockUrlProvider;
+import com.fusionjack.adhell3.db.entity.BlockUrlProviderStats;
 import com.fusionjack.adhell3.tasks.SetDomainCountAsyncTask;
 import com.fusionjack.adhell3.utils.AdhellAppIntegrity;
 import com.fusionjack.adhell3.utils.AdhellFactory;
+import com.fusionjack.adhell3.utils.AppPreferences;
+import com.fusionjack.adhell3.utils.BlockUrlProviderCache;
 import com.fusionjack.adhell3.utils.BlockUrlUtils;
+import com.fusionjack.adhell3.utils.DomainSet;
 import com.fusionjack.adhell3.viewmodel.BlockUrlProvidersViewModel;
 import com.getbase.floatingactionbutton.FloatingActionButton;
 import com.getbase.floatingactionbutton.FloatingActionsMenu;
@@ -73,9 +76,16 @@ public class ProviderListFragment extends Fragment {
             ListAdapter adapter = providerListView.getAdapter();
             if (adapter == null) {
                 BlockUrlProviderAdapter arrayAdapter = new BlockUrlProviderAdapter(context, blockUrlProviders);
+                arrayAdapter.setProviderStats(providersViewModel.getLatestProviderStats().getValue());
                 providerListView.setAdapter(arrayAdapter);
             }
         });
+        providersViewModel.getLatestProviderStats().observe(this, providerStats -> {
+            ListAdapter adapter = providerListView.getAdapter();
+            if (adapter instanceof BlockUrlProviderAdapter) {
+                ((BlockUrlProviderAdapter) adapter).setProviderStats(providerStats);
+            }
+        });
 
         providerListView.setOnItemClickListener((parent, view1, position, id) -> {
             BlockUrlProvider provider = (BlockUrlProvider) parent.getItemAtPosition(position);
@@ -134,7 +144,7 @@ public class ProviderListFragment extends Fragment {
 
         @Override
         protected Void doInBackground(Void... voids) {
-            AppDatabase appDatabase = AdhellFactory.getInstance().getAppDatabase();
+            BlocklistDatabase blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
 
             blockUrlProvider = new BlockUrlProvider();
             blockUrlProvider.url = provider;
@@ -142,9 +152,9 @@ public class ProviderListFragment extends Fragment {
             blockUrlProvider.deletable = true;
             blockUrlProvider.lastUpdated = new Date();
             blockUrlProvider.selected = false;
-            blockUrlProvider.id = appDatabase.blockUrlProviderDao().insertAll(blockUrlProvider)[0];
+            blockUrlProvider.id = blocklistDatabase.blockUrlProviderDao().insertAll(blockUrlProvider)[0];
             blockUrlProvider.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
-            appDatabase.blockUrlProviderDao().updateBlockUrlProviders(blockUrlProvider);
+            blocklistDatabase.blockUrlProviderDao().updateBlockUrlProviders(blockUrlProvider);
 
             return null;
         }
@@ -178,15 +188,15 @@ public class ProviderListFragment extends Fragment {
 
         @Override
         protected Void doInBackground(Void... voids) {
-            AppDatabase appDatabase = AdhellFactory.getInstance().getAppDatabase();
+            BlocklistDatabase blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
             try {
-                List<BlockUrl> blockUrls = BlockUrlUtils.loadBlockUrls(provider);
-                provider.count = blockUrls.size();
-                provider.lastUpdated = new Date();
-                appDatabase.blockUrlProviderDao().updateBlockUrlProviders(provider);
-                appDatabase.blockUrlDao().insertAll(blockUrls);
+                BlockUrlProviderStats stats = new BlockUrlProviderStats();
+                DomainSet blockUrls = BlockUrlUtils.loadBlockUrls(provider, stats);
+                BlockUrlUtils.updateBlockUrls(provider, blockUrls, stats, blocklistDatabase);
             } catch (Exception e) {
-                appDatabase.blockUrlProviderDao().delete(provider);
+                blocklistDatabase.blockUrlProviderDao().delete(provider);
+                blocklistDatabase.domainDao().deleteUnused();
+                BlockUrlProviderCache.delete(provider.id);
                 e.printStackTrace();
             }
             return null;
@@ -220,6 +230,8 @@ public class ProviderListFragment extends Fragment {
             if (context != null) {
                 if (AdhellFactory.getInstance().hasInternetAccess(context)) {
                     AdhellFactory.getInstance().updateAllProviders();
+                } else {
+                    AdhellFactory.getInstance().rebuildProvidersFromCache();
                 }
             }
             return null;
@@ -237,6 +249,9 @@ public class ProviderListFragment extends Fragment {
                 }
 
                 new SetDomainCountAsyncTask(context).execute();
+
+                // The changed domains are pushed once the domain rules are applied from the home tab
+                AppPreferences.getInstance().setDomainRulesOutdated(true);
             }
         }
     }
@@ -250,8 +265,8 @@ public class ProviderListFragment extends Fragment {
 
         @Override
         protected List<BlockUrlProvider> doInBackground(Void... voids) {
-            AppDatabase appDatabase = AdhellFactory.getInstance().getAppDatabase();
-            return appDatabase.blockUrlProviderDao().getAll2();
+            BlocklistDatabase blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
+            return blocklistDatabase.blockUrlProviderDao().getAll2();
         }
 
         @Override
@@ -269,6 +284,7 @@ public class ProviderListFragment extends Fragment {
                                 if (dbProvider != null) {
                                     provider.count = dbProvider.count;
                                     provider.lastUpdated = dbProvider.lastUpdated;
+                                    provider.domainsBuiltAt = dbProvider.domainsBuiltAt;
                                 }
                             }
                         }
@@ -246,6 +246,9 @@ public class SettingsFragment extends PreferenceFragmentCompat {
                     if (AdhellFactory.getInstance().hasInternetAccess(context)) {
                         publishProgress("Updating all providers...");
                         AdhellFactory.getInstance().updateAllProviders();
+                    } else {
+                        publishProgress("Loading cached providers...");
+                        AdhellFactory.getInstance().rebuildProvidersFromCache();
                     }
                 }
 
@@ -5,6 +5,10 @@ import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.widget.Toast;
 
+import com.fusionjack.adhell3.utils.AppPreferences;
+
+import java.util.StringTokenizer;
+
 import io.reactivex.SingleObserver;
 import io.reactivex.disposables.Disposable;
 
@@ -31,6 +35,7 @@ public abstract class UserListFragment extends Fragment {
                 } else {
                     Toast.makeText(context, "Rule has been added", Toast.LENGTH_SHORT).show();
                 }
+                markDomainRulesOutdated(item);
             }
 
             @Override
@@ -51,6 +56,7 @@ public abstract class UserListFragment extends Fragment {
                 } else {
                     Toast.makeText(context, "Rule has been removed", Toast.LENGTH_SHORT).show();
                 }
+                markDomainRulesOutdated(item);
             }
 
             @Override
@@ -59,4 +65,11 @@ public abstract class UserListFragment extends Fragment {
             }
         };
     }
+
+    // Custom firewall rules, i.e. packageName|ip|port, are not part of the domain rules
+    private void markDomainRulesOutdated(String item) {
+        if (new StringTokenizer(item, "|").countTokens() != 3) {
+            AppPreferences.getInstance().setDomainRulesOutdated(true);
+        }
+    }
 }
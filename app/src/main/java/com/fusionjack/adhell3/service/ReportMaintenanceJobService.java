@@ -0,0 +1,80 @@
+package com.fusionjack.adhell3.service;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+
+import com.fusionjack.adhell3.utils.AdhellFactory;
+import com.fusionjack.adhell3.utils.FirewallUtils;
+import com.fusionjack.adhell3.utils.LogUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls up the blocked domain report every hour and compacts the blocklist database once a day while
+ * the device is idle and charging, so that neither runs when the report is shown.
+ */
+public class ReportMaintenanceJobService extends JobService {
+
+    private static final int ROLL_UP_JOB_ID = 1;
+    private static final int COMPACT_JOB_ID = 2;
+    private static final long ROLL_UP_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final long COMPACT_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    // Schedules the jobs which are not scheduled yet, a scheduled job keeps its period
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+
+        Set<Integer> pendingJobIds = new HashSet<>();
+        for (JobInfo jobInfo : jobScheduler.getAllPendingJobs()) {
+            pendingJobIds.add(jobInfo.getId());
+        }
+        ComponentName serviceName = new ComponentName(context, ReportMaintenanceJobService.class);
+        if (!pendingJobIds.contains(ROLL_UP_JOB_ID)) {
+            jobScheduler.schedule(new JobInfo.Builder(ROLL_UP_JOB_ID, serviceName)
+                    .setPeriodic(ROLL_UP_INTERVAL)
+                    .setPersisted(true)
+                    .build());
+        }
+        if (!pendingJobIds.contains(COMPACT_JOB_ID)) {
+            jobScheduler.schedule(new JobInfo.Builder(COMPACT_JOB_ID, serviceName)
+                    .setPeriodic(COMPACT_INTERVAL)
+                    .setRequiresDeviceIdle(true)
+                    .setRequiresCharging(true)
+                    .setPersisted(true)
+                    .build());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        AsyncTask.execute(() -> {
+            try {
+                if (params.getJobId() == COMPACT_JOB_ID) {
+                    AdhellFactory.getInstance().getBlocklistDatabase().compact();
+                } else {
+                    FirewallUtils.getInstance().rollUpReportBlockedUrl();
+                }
+            } catch (Exception e) {
+                LogUtils.error("Report maintenance job " + params.getJobId() + " failed", e);
+            }
+            jobFinished(params, false);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The next period runs the job again
+        return false;
+    }
+}
@@ -6,7 +6,7 @@ import android.os.AsyncTask;
 import android.widget.TextView;
 
 import com.fusionjack.adhell3.R;
-import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
 import com.fusionjack.adhell3.utils.AdhellFactory;
 import com.fusionjack.adhell3.utils.BlockUrlUtils;
 
@@ -22,8 +22,8 @@ public class SetDomainCountAsyncTask extends AsyncTask<Void, Integer, Integer> {
 
     @Override
     protected Integer doInBackground(Void... voids) {
-        AppDatabase appDatabase = AdhellFactory.getInstance().getAppDatabase();
-        return BlockUrlUtils.getAllBlockedUrlsCount(appDatabase);
+        BlocklistDatabase blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
+        return BlockUrlUtils.getAllBlockedUrlsCount(blocklistDatabase);
     }
 
     @Override
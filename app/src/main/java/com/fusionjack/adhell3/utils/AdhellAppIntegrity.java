@@ -4,9 +4,11 @@ import android.content.SharedPreferences;
 
 import com.fusionjack.adhell3.BuildConfig;
 import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
+import com.fusionjack.adhell3.db.LegacyBlocklistTables;
 import com.fusionjack.adhell3.db.entity.AppInfo;
-import com.fusionjack.adhell3.db.entity.BlockUrl;
 import com.fusionjack.adhell3.db.entity.BlockUrlProvider;
+import com.fusionjack.adhell3.db.entity.BlockUrlProviderStats;
 import com.fusionjack.adhell3.db.entity.DisabledPackage;
 import com.fusionjack.adhell3.db.entity.FirewallWhitelistedPackage;
 import com.fusionjack.adhell3.db.entity.PolicyPackage;
@@ -29,12 +31,14 @@ public class AdhellAppIntegrity {
     private static final String CHECK_PACKAGE_DB = "adhell_packages_filled_db";
 
     private AppDatabase appDatabase;
+    private BlocklistDatabase blocklistDatabase;
     private SharedPreferences sharedPreferences;
 
     private static AdhellAppIntegrity instance;
 
     private AdhellAppIntegrity() {
         this.appDatabase = AdhellFactory.getInstance().getAppDatabase();
+        this.blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
         this.sharedPreferences = AdhellFactory.getInstance().getSharedPreferences();
     }
 
@@ -80,6 +84,11 @@ public class AdhellAppIntegrity {
         }
     }
 
+    // Must run before anything else uses the blocklist database, the copied tables replace its content
+    public void moveBlocklistTables() {
+        LegacyBlocklistTables.move(appDatabase, blocklistDatabase);
+    }
+
     public void checkDefaultPolicyExists() {
         PolicyPackage policyPackage = appDatabase.policyPackageDao().getPolicyById(DEFAULT_POLICY_ID);
         if (policyPackage != null) {
@@ -152,14 +161,15 @@ public class AdhellAppIntegrity {
 
     public void checkAdhellStandardPackage() {
         BlockUrlProvider blockUrlProvider =
-                appDatabase.blockUrlProviderDao().getByUrl(ADHELL_STANDARD_PACKAGE);
+                blocklistDatabase.blockUrlProviderDao().getByUrl(ADHELL_STANDARD_PACKAGE);
         if (blockUrlProvider != null) {
             return;
         }
 
         // Remove existing default
-        if (appDatabase.blockUrlProviderDao().getDefault().size() > 0) {
-            appDatabase.blockUrlProviderDao().deleteDefault();
+        if (blocklistDatabase.blockUrlProviderDao().getDefault().size() > 0) {
+            blocklistDatabase.blockUrlProviderDao().deleteDefault();
+            blocklistDatabase.domainDao().deleteUnused();
         }
 
         // Add the default package
@@ -169,17 +179,15 @@ public class AdhellAppIntegrity {
         blockUrlProvider.deletable = false;
         blockUrlProvider.selected = true;
         blockUrlProvider.policyPackageId = DEFAULT_POLICY_ID;
-        long ids[] = appDatabase.blockUrlProviderDao().insertAll(blockUrlProvider);
+        long ids[] = blocklistDatabase.blockUrlProviderDao().insertAll(blockUrlProvider);
         blockUrlProvider.id = ids[0];
-        List<BlockUrl> blockUrls;
+        DomainSet blockUrls;
+        BlockUrlProviderStats stats = new BlockUrlProviderStats();
         try {
-            blockUrls = BlockUrlUtils.loadBlockUrls(blockUrlProvider);
-            blockUrlProvider.count = blockUrls.size();
-            LogUtils.info( "Number of urls to insert: " + blockUrlProvider.count);
-            // Save url provider
-            appDatabase.blockUrlProviderDao().updateBlockUrlProviders(blockUrlProvider);
-            // Save urls from providers
-            appDatabase.blockUrlDao().insertAll(blockUrls);
+            blockUrls = BlockUrlUtils.loadBlockUrls(blockUrlProvider, stats);
+            LogUtils.info( "Number of urls to insert: " + blockUrls.size());
+            // Save url provider and urls from providers
+            BlockUrlUtils.updateBlockUrls(blockUrlProvider, blockUrls, stats, blocklistDatabase);
         } catch (Exception e) {
             LogUtils.error( e.getMessage(), e);
         }
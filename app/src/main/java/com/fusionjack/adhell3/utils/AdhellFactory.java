@@ -15,10 +15,11 @@ import android.util.Patterns;
 import com.fusionjack.adhell3.App;
 import com.fusionjack.adhell3.R;
 import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
 import com.fusionjack.adhell3.db.entity.AppInfo;
 import com.fusionjack.adhell3.db.entity.AppPermission;
-import com.fusionjack.adhell3.db.entity.BlockUrl;
 import com.fusionjack.adhell3.db.entity.BlockUrlProvider;
+import com.fusionjack.adhell3.db.entity.BlockUrlProviderStats;
 import com.fusionjack.adhell3.db.entity.DisabledPackage;
 import com.samsung.android.knox.AppIdentity;
 import com.samsung.android.knox.EnterpriseDeviceManager;
@@ -27,10 +28,18 @@ import com.samsung.android.knox.license.KnoxEnterpriseLicenseManager;
 import com.samsung.android.knox.net.firewall.DomainFilterRule;
 import com.samsung.android.knox.net.firewall.Firewall;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -40,6 +49,7 @@ import static com.samsung.android.knox.application.ApplicationPolicy.PERMISSION_
 import static com.samsung.android.knox.application.ApplicationPolicy.PERMISSION_POLICY_STATE_GRANT;
 
 public final class AdhellFactory {
+    private static final int MAX_PROVIDER_THREADS = 3;
     private static AdhellFactory instance;
 
     @Nullable
@@ -53,6 +63,9 @@ public final class AdhellFactory {
     @Inject
     AppDatabase appDatabase;
 
+    @Inject
+    BlocklistDatabase blocklistDatabase;
+
     @Inject
     PackageManager packageManager;
 
@@ -88,6 +101,10 @@ public final class AdhellFactory {
         return appDatabase;
     }
 
+    public BlocklistDatabase getBlocklistDatabase() {
+        return blocklistDatabase;
+    }
+
     public PackageManager getPackageManager() {
         return packageManager;
     }
@@ -183,6 +200,19 @@ public final class AdhellFactory {
         }
     }
 
+    // Changes whenever applyDns would set other DNS servers or apply them to other apps
+    public String getDnsConfig() {
+        if (!AppPreferences.getInstance().isDnsNotEmpty()) {
+            return "";
+        }
+        StringBuilder dnsConfig = new StringBuilder();
+        dnsConfig.append(AppPreferences.getInstance().getDns1()).append(',').append(AppPreferences.getInstance().getDns2());
+        for (AppInfo app : appDatabase.applicationInfoDao().getDnsApps()) {
+            dnsConfig.append(',').append(app.packageName);
+        }
+        return dnsConfig.toString();
+    }
+
     public void applyDns(Handler handler) {
         if (AppPreferences.getInstance().isDnsNotEmpty()) {
             String dns1 = AppPreferences.getInstance().getDns1();
@@ -232,19 +262,95 @@ public final class AdhellFactory {
     }
 
     public void updateAllProviders() {
-        List<BlockUrlProvider> providers = appDatabase.blockUrlProviderDao().getBlockUrlProviderBySelectedFlag(1);
-        appDatabase.blockUrlDao().deleteBlockUrlsBySelectedProvider();
+        loadAllProviders(true);
+    }
+
+    // Rebuilds the domains of the providers from their cached host files when they are missing, e.g. after a restore,
+    // or have been parsed by an older parser
+    public void rebuildProvidersFromCache() {
+        loadAllProviders(false);
+    }
+
+    private void loadAllProviders(boolean online) {
+        List<BlockUrlProvider> providers = blocklistDatabase.blockUrlProviderDao().getBlockUrlProviderBySelectedFlag(1);
+        if (providers.size() == 0) {
+            return;
+        }
+        boolean reparse = AppPreferences.getInstance().getParserVersion() != BlockUrlUtils.PARSER_VERSION;
+
+        // Download and parse the providers in parallel, the domains are written one provider at a time
+        // on this thread as soon as a provider is loaded
+        int threadCount = Math.min(providers.size(), MAX_PROVIDER_THREADS);
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        CompletionService<DomainSet> completionService = new ExecutorCompletionService<>(executorService);
+        Map<Future<DomainSet>, BlockUrlProvider> tasks = new HashMap<>();
+        Map<BlockUrlProvider, BlockUrlProviderStats> providerStats = new HashMap<>();
         for (BlockUrlProvider provider : providers) {
+            BlockUrlProviderStats stats = new BlockUrlProviderStats();
+            providerStats.put(provider, stats);
+            tasks.put(completionService.submit(() -> loadProvider(provider, online, reparse, stats)), provider);
+        }
+
+        boolean failed = false;
+        // The durability is relaxed once for all the providers
+        BlockUrlUtils.beginBulkLoad(blocklistDatabase);
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                Future<DomainSet> task = completionService.take();
+                BlockUrlProvider provider = tasks.get(task);
+                try {
+                    DomainSet blockUrls = task.get();
+                    // Skip providers whose domains are still up to date
+                    if (blockUrls != null) {
+                        BlockUrlUtils.updateBlockUrls(provider, blockUrls, providerStats.get(provider), blocklistDatabase);
+                    }
+                } catch (ExecutionException e) {
+                    // The provider keeps its previous domains
+                    LogUtils.error("Failed to update provider " + provider.url, e.getCause());
+                    failed = true;
+                } catch (RuntimeException e) {
+                    // E.g. an SQLiteException, the transaction of the provider is rolled back and the others are still written
+                    LogUtils.error("Failed to store the domains of provider " + provider.url, e);
+                    failed = true;
+                }
+            }
+            if (!failed) {
+                AppPreferences.getInstance().setParserVersion(BlockUrlUtils.PARSER_VERSION);
+            }
+
+            // The blocked domains are compiled right away, not when the domain rules are applied
+            BlockedDomainSnapshot.refresh(blocklistDatabase);
+
+            // Replacing the domains of a provider frees most of the pages it used
+            blocklistDatabase.compact();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            BlockUrlUtils.endBulkLoad(blocklistDatabase);
+            executorService.shutdownNow();
+        }
+    }
+
+    // Returns null if the stored domains of the provider don't need to be updated
+    @Nullable
+    private DomainSet loadProvider(BlockUrlProvider provider, boolean online, boolean reparse, BlockUrlProviderStats stats) throws Exception {
+        // The cached host file is only parsed if the stored domains are missing or outdated
+        boolean rebuild = reparse || provider.domainsBuiltAt == null;
+        if (online) {
             try {
-                List<BlockUrl> blockUrls = BlockUrlUtils.loadBlockUrls(provider);
-                provider.count = blockUrls.size();
-                provider.lastUpdated = new Date();
-                appDatabase.blockUrlProviderDao().updateBlockUrlProviders(provider);
-                appDatabase.blockUrlDao().insertAll(blockUrls);
-            } catch (Exception e) {
-                e.printStackTrace();
+                DomainSet blockUrls = BlockUrlUtils.loadModifiedBlockUrls(provider, stats);
+                if (blockUrls != null || !rebuild) {
+                    return blockUrls;
+                }
+            } catch (IOException e) {
+                if (!rebuild || !BlockUrlProviderCache.exists(provider.id)) {
+                    throw e;
+                }
+                LogUtils.error("Failed to download provider " + provider.url + ", using the cached host file", e);
             }
         }
+        // The time of a failed download is part of the metrics of the cached host file
+        return rebuild ? BlockUrlUtils.loadCachedBlockUrls(provider, stats) : null;
     }
 
     public boolean hasInternetAccess(Context context) {
@@ -149,57 +149,74 @@ public class AppCache {
             }
 
             if (modifiedApps != null && modifiedApps.size() > 0 && appDatabase.applicationInfoDao().getAppSize() > 0) {
-                appDatabase.firewallWhitelistedPackageDao().deleteAll();
-                appDatabase.disabledPackageDao().deleteAll();
-                appDatabase.restrictedPackageDao().deleteAll();
-                appDatabase.dnsPackageDao().deleteAll();
+                restoreModifiedApps(appDatabase, modifiedApps);
+            }
 
-                for (AppInfo modifiedApp : modifiedApps) {
-                    AppInfo appInfo = appDatabase.applicationInfoDao().getAppByPackageName(modifiedApp.packageName);
-                    if (appInfo != null) {
-                        if (modifiedApp.adhellWhitelisted) {
-                            appInfo.adhellWhitelisted = true;
-                            FirewallWhitelistedPackage whitelistedPackage = new FirewallWhitelistedPackage();
-                            whitelistedPackage.packageName = modifiedApp.packageName;
-                            whitelistedPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
-                            appDatabase.firewallWhitelistedPackageDao().insert(whitelistedPackage);
-                        }
-                        if (modifiedApp.disabled) {
-                            appInfo.disabled = true;
-                            DisabledPackage disabledPackage = new DisabledPackage();
-                            disabledPackage.packageName = modifiedApp.packageName;
-                            disabledPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
-                            appDatabase.disabledPackageDao().insert(disabledPackage);
-                        }
-                        if (modifiedApp.mobileRestricted) {
-                            appInfo.mobileRestricted = true;
-                            RestrictedPackage restrictedPackage = new RestrictedPackage();
-                            restrictedPackage.packageName = modifiedApp.packageName;
-                            restrictedPackage.type = MOBILE_RESTRICTED_TYPE;
-                            restrictedPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
-                            appDatabase.restrictedPackageDao().insert(restrictedPackage);
-                        }
-                        if (modifiedApp.wifiRestricted) {
-                            appInfo.wifiRestricted = true;
-                            RestrictedPackage restrictedPackage = new RestrictedPackage();
-                            restrictedPackage.packageName = modifiedApp.packageName;
-                            restrictedPackage.type = WIFI_RESTRICTED_TYPE;
-                            restrictedPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
-                            appDatabase.restrictedPackageDao().insert(restrictedPackage);
-                        }
-                        if (modifiedApp.hasCustomDns) {
-                            appInfo.hasCustomDns = true;
-                            DnsPackage dnsPackage = new DnsPackage();
-                            dnsPackage.packageName = modifiedApp.packageName;
-                            dnsPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
-                            appDatabase.dnsPackageDao().insert(dnsPackage);
-                        }
-                        appDatabase.applicationInfoDao().update(appInfo);
-                    }
+            return null;
+        }
+
+        // The policy packages are stored again from the modified apps, only the apps which are still installed keep their flags
+        private void restoreModifiedApps(AppDatabase appDatabase, List<AppInfo> modifiedApps) {
+            List<FirewallWhitelistedPackage> whitelistedPackages = new ArrayList<>();
+            List<DisabledPackage> disabledPackages = new ArrayList<>();
+            List<RestrictedPackage> restrictedPackages = new ArrayList<>();
+            List<DnsPackage> dnsPackages = new ArrayList<>();
+            for (AppInfo modifiedApp : modifiedApps) {
+                if (modifiedApp.adhellWhitelisted) {
+                    FirewallWhitelistedPackage whitelistedPackage = new FirewallWhitelistedPackage();
+                    whitelistedPackage.packageName = modifiedApp.packageName;
+                    whitelistedPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
+                    whitelistedPackages.add(whitelistedPackage);
+                }
+                if (modifiedApp.disabled) {
+                    DisabledPackage disabledPackage = new DisabledPackage();
+                    disabledPackage.packageName = modifiedApp.packageName;
+                    disabledPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
+                    disabledPackages.add(disabledPackage);
+                }
+                if (modifiedApp.mobileRestricted) {
+                    RestrictedPackage restrictedPackage = new RestrictedPackage();
+                    restrictedPackage.packageName = modifiedApp.packageName;
+                    restrictedPackage.type = MOBILE_RESTRICTED_TYPE;
+                    restrictedPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
+                    restrictedPackages.add(restrictedPackage);
+                }
+                if (modifiedApp.wifiRestricted) {
+                    RestrictedPackage restrictedPackage = new RestrictedPackage();
+                    restrictedPackage.packageName = modifiedApp.packageName;
+                    restrictedPackage.type = WIFI_RESTRICTED_TYPE;
+                    restrictedPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
+                    restrictedPackages.add(restrictedPackage);
+                }
+                if (modifiedApp.hasCustomDns) {
+                    DnsPackage dnsPackage = new DnsPackage();
+                    dnsPackage.packageName = modifiedApp.packageName;
+                    dnsPackage.policyPackageId = AdhellAppIntegrity.DEFAULT_POLICY_ID;
+                    dnsPackages.add(dnsPackage);
                 }
             }
 
-            return null;
+            appDatabase.runInTransaction(() -> {
+                appDatabase.firewallWhitelistedPackageDao().deleteAll();
+                appDatabase.firewallWhitelistedPackageDao().insertAll(whitelistedPackages);
+                appDatabase.firewallWhitelistedPackageDao().deleteNotInstalled();
+                appDatabase.applicationInfoDao().applyWhitelistedPackages();
+
+                appDatabase.disabledPackageDao().deleteAll();
+                appDatabase.disabledPackageDao().insertAll(disabledPackages);
+                appDatabase.disabledPackageDao().deleteNotInstalled();
+                appDatabase.applicationInfoDao().applyDisabledPackages();
+
+                appDatabase.restrictedPackageDao().deleteAll();
+                appDatabase.restrictedPackageDao().insertAll(restrictedPackages);
+                appDatabase.restrictedPackageDao().deleteNotInstalled();
+                appDatabase.applicationInfoDao().applyRestrictedPackages(MOBILE_RESTRICTED_TYPE, WIFI_RESTRICTED_TYPE);
+
+                appDatabase.dnsPackageDao().deleteAll();
+                appDatabase.dnsPackageDao().insertAll(dnsPackages);
+                appDatabase.dnsPackageDao().deleteNotInstalled();
+                appDatabase.applicationInfoDao().applyDnsPackages();
+            });
         }
 
         @Override
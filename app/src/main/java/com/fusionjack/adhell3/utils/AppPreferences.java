@@ -13,6 +13,8 @@ public final class AppPreferences {
     private static final String DNS1 = "dns1";
     private static final String DNS2 = "dns2";
     private static final String PASSWORD = "password";
+    private static final String PARSER_VERSION = "parserVersion";
+    private static final String DOMAIN_RULES_OUTDATED = "domainRulesOutdated";
 
     private AppPreferences() {
         sharedPreferences = AdhellFactory.getInstance().getSharedPreferences();
@@ -97,6 +99,26 @@ public final class AppPreferences {
         editor.apply();
     }
 
+    public int getParserVersion() {
+        return sharedPreferences.getInt(PARSER_VERSION, 0);
+    }
+
+    public void setParserVersion(int version) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putInt(PARSER_VERSION, version);
+        editor.apply();
+    }
+
+    public boolean isDomainRulesOutdated() {
+        return sharedPreferences.getBoolean(DOMAIN_RULES_OUTDATED, false);
+    }
+
+    public void setDomainRulesOutdated(boolean outdated) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean(DOMAIN_RULES_OUTDATED, outdated);
+        editor.apply();
+    }
+
     public void resetPassword() {
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.putString(PASSWORD, "");
@@ -0,0 +1,263 @@
+package com.fusionjack.adhell3.utils;
+
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonWriter;
+
+import com.fusionjack.adhell3.App;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Domain rules per package as they are pushed to Knox, which merges all the rules of a package.
+ * The rules are recorded after every push, also one which failed halfway, so that the next push only
+ * removes and adds the domains which changed since then.
+ *
+ * A package either includes the domains of the selected providers or not, these domains are not
+ * listed here but kept as the applied {@link BlockedDomainSnapshot} of the recorded version.
+ * Domains which Knox did not add are recorded as rejected, so that they are added again next time. Domains
+ * which Knox did not remove are recorded as removed, so that a removal which cannot succeed is not retried.
+ */
+public final class AppliedDomainRules {
+
+    private static final String RULES_FILE = "applied_domain_rules.json";
+
+    private final Map<String, PackageRules> packages = new TreeMap<>();
+    private final long blockedDomainsVersion;
+    private final String dnsConfig;
+
+    public AppliedDomainRules(long blockedDomainsVersion, String dnsConfig) {
+        this.blockedDomainsVersion = blockedDomainsVersion;
+        this.dnsConfig = dnsConfig;
+    }
+
+    // No rules, as in Knox after the domain rules are cleared
+    public static AppliedDomainRules empty() {
+        return new AppliedDomainRules(0, "");
+    }
+
+    public void add(String packageName, boolean blockedDomains, Collection<String> denyDomains, Collection<String> allowDomains) {
+        PackageRules rules = getPackageRules(packageName);
+        rules.blockedDomains |= blockedDomains;
+        rules.denyDomains.addAll(denyDomains);
+        rules.allowDomains.addAll(allowDomains);
+    }
+
+    // A domain which Knox did not add is not applied, so that it is added again next time
+    public void reject(String packageName, String domain, boolean allow) {
+        PackageRules rules = getPackageRules(packageName);
+        if (allow) {
+            rules.allowDomains.remove(domain);
+        } else {
+            rules.rejectedDomains.add(domain);
+        }
+    }
+
+    // Records the package with the rules it has in the given rules, a package without rules there is recorded as empty
+    public void copy(String packageName, AppliedDomainRules from) {
+        PackageRules rules = getPackageRules(packageName);
+        PackageRules fromRules = from.packages.get(packageName);
+        if (fromRules != null) {
+            rules.blockedDomains = fromRules.blockedDomains;
+            rules.denyDomains.addAll(fromRules.denyDomains);
+            rules.allowDomains.addAll(fromRules.allowDomains);
+            rules.rejectedDomains.addAll(fromRules.rejectedDomains);
+        }
+    }
+
+    private PackageRules getPackageRules(String packageName) {
+        PackageRules rules = packages.get(packageName);
+        if (rules == null) {
+            rules = new PackageRules();
+            packages.put(packageName, rules);
+        }
+        return rules;
+    }
+
+    public Set<String> getPackageNames() {
+        return packages.keySet();
+    }
+
+    // Sorted deny domains of the package, including the given blocked domains if the package uses them
+    public Iterator<String> getDenyDomains(String packageName, @Nullable BlockedDomainSnapshot blockedDomains) {
+        PackageRules rules = packages.get(packageName);
+        if (rules == null) {
+            return Collections.emptyIterator();
+        }
+        Iterator<String> denyDomains = rules.denyDomains.iterator();
+        if (rules.blockedDomains && blockedDomains != null) {
+            denyDomains = SortedIterators.union(blockedDomains.iterator(), denyDomains);
+        }
+        if (!rules.rejectedDomains.isEmpty()) {
+            denyDomains = SortedIterators.difference(denyDomains, rules.rejectedDomains.iterator());
+        }
+        return denyDomains;
+    }
+
+    public Set<String> getAllowDomains(String packageName) {
+        PackageRules rules = packages.get(packageName);
+        return rules == null ? Collections.emptySet() : rules.allowDomains;
+    }
+
+    public boolean hasBlockedDomains(String packageName) {
+        PackageRules rules = packages.get(packageName);
+        return rules != null && rules.blockedDomains;
+    }
+
+    public boolean hasBlockedDomains() {
+        for (PackageRules rules : packages.values()) {
+            if (rules.blockedDomains) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getBlockedDomainsVersion() {
+        return blockedDomainsVersion;
+    }
+
+    public String getDnsConfig() {
+        return dnsConfig;
+    }
+
+    // Returns null if no rules are recorded
+    @Nullable
+    public static AppliedDomainRules load() {
+        File file = getRulesFile();
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            long blockedDomainsVersion = 0;
+            String dnsConfig = "";
+            Map<String, PackageRules> packages = new TreeMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("blockedDomainsVersion")) {
+                    blockedDomainsVersion = reader.nextLong();
+                } else if (name.equals("dnsConfig")) {
+                    dnsConfig = reader.nextString();
+                } else if (name.equals("packages")) {
+                    readPackages(reader, packages);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            AppliedDomainRules appliedRules = new AppliedDomainRules(blockedDomainsVersion, dnsConfig);
+            appliedRules.packages.putAll(packages);
+            return appliedRules;
+        } catch (IOException | IllegalStateException e) {
+            LogUtils.error("Cannot read the applied domain rules", e);
+            return null;
+        }
+    }
+
+    private static void readPackages(JsonReader reader, Map<String, PackageRules> packages) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String packageName = "";
+            PackageRules rules = new PackageRules();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("packageName")) {
+                    packageName = reader.nextString();
+                } else if (name.equals("blockedDomains")) {
+                    rules.blockedDomains = reader.nextBoolean();
+                } else if (name.equals("denyDomains")) {
+                    readDomains(reader, rules.denyDomains);
+                } else if (name.equals("allowDomains")) {
+                    readDomains(reader, rules.allowDomains);
+                } else if (name.equals("rejectedDomains")) {
+                    readDomains(reader, rules.rejectedDomains);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            packages.put(packageName, rules);
+        }
+        reader.endArray();
+    }
+
+    private static void readDomains(JsonReader reader, Set<String> domains) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            domains.add(reader.nextString());
+        }
+        reader.endArray();
+    }
+
+    public void save() throws IOException {
+        File file = getRulesFile();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"))) {
+            writer.beginObject();
+            writer.name("blockedDomainsVersion").value(blockedDomainsVersion);
+            writer.name("dnsConfig").value(dnsConfig);
+            writer.name("packages");
+            writer.beginArray();
+            for (Map.Entry<String, PackageRules> entry : packages.entrySet()) {
+                PackageRules rules = entry.getValue();
+                writer.beginObject();
+                writer.name("packageName").value(entry.getKey());
+                writer.name("blockedDomains").value(rules.blockedDomains);
+                writeDomains(writer, "denyDomains", rules.denyDomains);
+                writeDomains(writer, "allowDomains", rules.allowDomains);
+                writeDomains(writer, "rejectedDomains", rules.rejectedDomains);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    private static void writeDomains(JsonWriter writer, String name, Set<String> domains) throws IOException {
+        writer.name(name);
+        writer.beginArray();
+        for (String domain : domains) {
+            writer.value(domain);
+        }
+        writer.endArray();
+    }
+
+    // The rules in Knox are not known anymore, e.g. they have been cleared or a push did not finish
+    public static void delete() {
+        File file = getRulesFile();
+        if (file.exists() && !file.delete()) {
+            LogUtils.info( "Cannot delete applied domain rules: " + file);
+        }
+    }
+
+    private static File getRulesFile() {
+        return new File(App.get().getFilesDir(), RULES_FILE);
+    }
+
+    private static class PackageRules {
+        private boolean blockedDomains;
+        private final SortedSet<String> denyDomains = new TreeSet<>();
+        private final SortedSet<String> allowDomains = new TreeSet<>();
+        private final SortedSet<String> rejectedDomains = new TreeSet<>();
+    }
+}
@@ -1,11 +1,6 @@
 package com.fusionjack.adhell3.utils;
 
 import com.fusionjack.adhell3.BuildConfig;
-import com.fusionjack.adhell3.db.entity.BlockUrl;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -20,28 +15,14 @@ public final class BlockUrlPatternsMatch {
     private static final String FILTER_PATTERN = "(?im)^\\|{2}((?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z]{2,})\\^(?:\\$(?:[a-z]+,)?third-party)?$";
     private static final Pattern filter_r = Pattern.compile(FILTER_PATTERN);
 
-    // Knox URL - Must contain a letter in prefix / domain
-    private static final String KNOX_VALID_PATTERN = "(?i)^(?=.*[a-z]).*$";
-    private static final Pattern knox_valid_r = Pattern.compile(KNOX_VALID_PATTERN);
-
     private static final String WILDCARD_PREFIX = "*";
 
     private BlockUrlPatternsMatch() {
     }
 
-    private static boolean wildcardValid (String domain) {
-        return wildcard_r.matcher(domain).matches();
-    }
-
-    private static boolean domainValid (String domain){
-        return domain_r.matcher(domain).matches();
-    }
-
-    public static List<BlockUrl> validHostFileDomains(String hostFileStr, long providerId) {
+    public static DomainSet validHostFileDomains(String hostFileStr) {
         // Set for unique domains
-        Set<String> uniqueBlockUrls = new HashSet<>();
-        // BlockUrl list to return
-        List<BlockUrl> blockUrls = new ArrayList<>();
+        DomainSet uniqueBlockUrls = new DomainSet();
 
         final Matcher filterPatternMatch = filter_r.matcher(hostFileStr);
         final Matcher domainPatternMatch = domain_r.matcher(hostFileStr);
@@ -49,41 +30,90 @@ public final class BlockUrlPatternsMatch {
 
         // Filter domains - something.com and *.something.com
         while (filterPatternMatch.find()) {
-            String filterDomain = getValidKnoxUrl(filterPatternMatch.group(1));
-            // Add something.com
-            uniqueBlockUrls.add(filterDomain);
-            // Conditionally add *.something.com
-            if (!filterDomain.startsWith(WILDCARD_PREFIX)) {
-                uniqueBlockUrls.add("*." + filterDomain);
-            }
+            int start = filterPatternMatch.start(1);
+            int end = filterPatternMatch.end(1);
+            addFilterDomain(hostFileStr, start, end, DomainValidator.hasLetterPrefix(hostFileStr, start, end), uniqueBlockUrls);
         }
 
         // Standard domains (conditionally prefix)
         while (domainPatternMatch.find()) {
-            String standardDomain = getValidKnoxUrl(domainPatternMatch.group());
-            String prefix = BuildConfig.DOMAIN_PREFIX ? (standardDomain.startsWith(WILDCARD_PREFIX) ? "" : WILDCARD_PREFIX) : "";
-            uniqueBlockUrls.add(prefix + standardDomain);
+            int start = domainPatternMatch.start();
+            int end = domainPatternMatch.end();
+            addStandardDomain(hostFileStr, start, end, DomainValidator.hasLetterPrefix(hostFileStr, start, end), uniqueBlockUrls);
         }
 
         // Wildcards
         while (wildcardPatternMatch.find()) {
-            String wildcard = wildcardPatternMatch.group();
-            uniqueBlockUrls.add(wildcard);
+            uniqueBlockUrls.add("", hostFileStr, wildcardPatternMatch.start(), wildcardPatternMatch.end());
+        }
+
+        return uniqueBlockUrls;
+    }
+
+    // Returns whether the host line is valid, duplicates are valid as well
+    public static boolean addValidHostFileDomain(String hostLine, int start, int end, DomainSet uniqueBlockUrls) {
+        // A single cleaned host line, so at most one of the syntaxes can match
+        final int filterDomainEnd = DomainValidator.filterDomainEnd(hostLine, start, end);
+        if (filterDomainEnd != -1) {
+            return addValidZone(hostLine, start + 2, filterDomainEnd, uniqueBlockUrls);
         }
 
-        // Add unique urls to block urls
-        for (String url : uniqueBlockUrls) {
-            blockUrls.add(new BlockUrl(url, providerId));
+        if (addValidDomain(hostLine, start, end, uniqueBlockUrls)) {
+            return true;
         }
+        if (DomainValidator.isWildcard(hostLine, start, end)) {
+            uniqueBlockUrls.add("", hostLine, start, end);
+            return true;
+        }
+        return false;
+    }
 
-        return blockUrls;
+    // A domain together with all of its subdomains, like a filter domain
+    static boolean addValidZone(CharSequence s, int start, int end, DomainSet uniqueBlockUrls) {
+        final int result = DomainValidator.checkDomainLabels(s, start, end);
+        if (result == DomainValidator.INVALID) {
+            return false;
+        }
+        addFilterDomain(s, start, end, result == DomainValidator.VALID, uniqueBlockUrls);
+        return true;
+    }
+
+    // A single domain, like a standard domain
+    static boolean addValidDomain(CharSequence s, int start, int end, DomainSet uniqueBlockUrls) {
+        final int result = DomainValidator.checkDomain(s, start, end);
+        if (result == DomainValidator.INVALID) {
+            return false;
+        }
+        addStandardDomain(s, start, end, result == DomainValidator.VALID, uniqueBlockUrls);
+        return true;
+    }
+
+    // The domain is added in lower case straight from the host source, without an intermediate String
+    private static void addFilterDomain(CharSequence s, int start, int end, boolean letterPrefix, DomainSet uniqueBlockUrls) {
+        if (letterPrefix) {
+            // Add something.com and *.something.com
+            uniqueBlockUrls.add("", s, start, end);
+            uniqueBlockUrls.add("*.", s, start, end);
+        } else {
+            // Only add the Knox safety net *123.something.com
+            uniqueBlockUrls.add(WILDCARD_PREFIX, s, start, end);
+        }
+    }
+
+    private static void addStandardDomain(CharSequence s, int start, int end, boolean letterPrefix, DomainSet uniqueBlockUrls) {
+        boolean prefix = BuildConfig.DOMAIN_PREFIX || !letterPrefix;
+        uniqueBlockUrls.add(prefix ? WILDCARD_PREFIX : "", s, start, end);
+    }
+
+    private static boolean hasLetterPrefix(String domain) {
+        return DomainValidator.hasLetterPrefix(domain, 0, domain.length());
     }
 
     public static boolean isUrlValid(String url) {
         if (url.contains(WILDCARD_PREFIX)) {
-            return BlockUrlPatternsMatch.wildcardValid(url);
+            return DomainValidator.isWildcard(url, 0, url.length());
         }
-        return BlockUrlPatternsMatch.domainValid(url);
+        return DomainValidator.checkDomain(url, 0, url.length()) != DomainValidator.INVALID;
     }
 
     public static String getValidKnoxUrl(String url) {
@@ -95,14 +125,9 @@ public final class BlockUrlPatternsMatch {
             return url;
         }
 
-        // Grab the prefix
-        String prefix = url.split("\\.")[0];
-        // Regex: must contain a letter (excl wildcards)
-        final Matcher prefix_valid = knox_valid_r.matcher(prefix);
-
         // If we don't have any letters in the prefix
         // Add a wildcard prefix as a safety net
-        return (prefix_valid.matches() ? "" : WILDCARD_PREFIX) + url;
+        return (hasLetterPrefix(url) ? "" : WILDCARD_PREFIX) + url;
     }
 
 }
\ No newline at end of file
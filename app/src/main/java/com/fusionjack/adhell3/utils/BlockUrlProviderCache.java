@@ -0,0 +1,149 @@
+package com.fusionjack.adhell3.utils;
+
+import android.support.annotation.Nullable;
+
+import com.fusionjack.adhell3.App;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the last successfully downloaded host file of every provider in app-private storage,
+ * gzip compressed and keyed by provider id, so that the domains can be rebuilt without network.
+ */
+public final class BlockUrlProviderCache {
+
+    private static final String CACHE_DIRECTORY = "providers";
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private BlockUrlProviderCache() {
+    }
+
+    public static boolean exists(long providerId) {
+        return getCacheFile(providerId).isFile();
+    }
+
+    // Returns null if there is no cached host file for the provider
+    @Nullable
+    public static InputStream open(long providerId) throws IOException {
+        File file = getCacheFile(providerId);
+        if (!file.isFile()) {
+            return null;
+        }
+        return new FileInputStream(file);
+    }
+
+    // Copies the host source into the cache while it is read, the cached copy is only replaced once the end is reached
+    public static InputStream cache(long providerId, InputStream hostSource) throws IOException {
+        File directory = getCacheDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+        return new CachingInputStream(hostSource, getCacheFile(providerId));
+    }
+
+    public static void delete(long providerId) {
+        File file = getCacheFile(providerId);
+        if (file.exists() && !file.delete()) {
+            LogUtils.info( "Cannot delete cached provider: " + file);
+        }
+    }
+
+    // Provider ids are not kept by a restore
+    public static void move(long oldProviderId, long newProviderId) {
+        if (oldProviderId == newProviderId) {
+            return;
+        }
+        File oldFile = getCacheFile(oldProviderId);
+        if (oldFile.isFile() && !oldFile.renameTo(getCacheFile(newProviderId))) {
+            LogUtils.info( "Cannot move cached provider: " + oldFile);
+        }
+    }
+
+    private static File getCacheDirectory() {
+        return new File(App.get().getFilesDir(), CACHE_DIRECTORY);
+    }
+
+    private static File getCacheFile(long providerId) {
+        return new File(getCacheDirectory(), providerId + ".gz");
+    }
+
+    private static class CachingInputStream extends FilterInputStream {
+        private final File cacheFile;
+        private final File tempFile;
+        private OutputStream cache;
+
+        CachingInputStream(InputStream in, File cacheFile) throws IOException {
+            super(in);
+            this.cacheFile = cacheFile;
+            this.tempFile = new File(cacheFile.getPath() + ".tmp");
+            this.cache = new GZIPOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                commit();
+            } else if (cache != null) {
+                cache.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count == -1) {
+                commit();
+            } else if (cache != null) {
+                cache.write(buffer, offset, count);
+            }
+            return count;
+        }
+
+        // Marking is not supported, the bytes would be cached twice
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("Skipping is not supported");
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                // A partially read host source is not cached
+                if (cache != null) {
+                    cache.close();
+                    cache = null;
+                    if (!tempFile.delete()) {
+                        LogUtils.info( "Cannot delete temporary file: " + tempFile);
+                    }
+                }
+            }
+        }
+
+        private void commit() throws IOException {
+            if (cache == null) {
+                return;
+            }
+            cache.close();
+            cache = null;
+            if (!tempFile.renameTo(cacheFile)) {
+                throw new IOException("Cannot write cached provider " + cacheFile);
+            }
+        }
+    }
+}
@@ -1,28 +1,49 @@
 package com.fusionjack.adhell3.utils;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteStatement;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
 import android.os.Handler;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.webkit.URLUtil;
 
+import com.fusionjack.adhell3.BuildConfig;
 import com.fusionjack.adhell3.db.AppDatabase;
-import com.fusionjack.adhell3.db.entity.BlockUrl;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
+import com.fusionjack.adhell3.db.DomainSearchIndex;
+import com.fusionjack.adhell3.db.SelectedDomainCounter;
 import com.fusionjack.adhell3.db.entity.BlockUrlProvider;
+import com.fusionjack.adhell3.db.entity.BlockUrlProviderStats;
 import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import com.google.common.io.CharStreams;
-import com.google.common.io.Files;
+import com.google.common.io.Closeables;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 public class BlockUrlUtils {
 
@@ -38,42 +59,388 @@ public class BlockUrlUtils {
     // Pattern to detect empty lines
     private static final Pattern emptyLinePattern = Pattern.compile("(?im)^\\s*");
 
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    // Maximum number of domains per statement, SQLite limits the number of variables of a statement
+    private static final int QUERY_CHUNK_SIZE = 500;
+
+    // Default of PRAGMA synchronous
+    private static final int SYNCHRONOUS_FULL = 2;
+
+    // Loads in progress and the setting of PRAGMA synchronous before the first of them
+    private static final Object bulkLoadLock = new Object();
+    private static int bulkLoadCount;
+    private static int synchronous = SYNCHRONOUS_FULL;
+
+    // Number of updates for which the metrics are kept per provider
+    private static final int STATS_HISTORY_SIZE = 10;
+
+    // Number of characters at the start of a host file used to detect its format
+    private static final int FORMAT_SAMPLE_SIZE = 8 * 1024;
+
+    // Version of the host file parsing, increase it whenever the parsing changes so that the providers are re-parsed
+    public static final int PARSER_VERSION = 2;
+
+    // The metrics of the update are collected in stats
     @NonNull
-    public static List<BlockUrl> loadBlockUrls(BlockUrlProvider blockUrlProvider) throws IOException, URISyntaxException {
+    public static DomainSet loadBlockUrls(BlockUrlProvider blockUrlProvider, BlockUrlProviderStats stats) throws IOException, URISyntaxException {
+        DomainSet blockUrls = loadBlockUrls(blockUrlProvider, false, stats);
+        return blockUrls == null ? new DomainSet() : blockUrls;
+    }
+
+    // Returns null if the provider has not been modified since its last download
+    @Nullable
+    public static DomainSet loadModifiedBlockUrls(BlockUrlProvider blockUrlProvider, BlockUrlProviderStats stats) throws IOException, URISyntaxException {
+        // A full download is needed to fill the cache of the provider
+        return loadBlockUrls(blockUrlProvider, BlockUrlProviderCache.exists(blockUrlProvider.id), stats);
+    }
+
+    // Loads the last downloaded host file of the provider, returns null if it has never been downloaded
+    @Nullable
+    public static DomainSet loadCachedBlockUrls(BlockUrlProvider blockUrlProvider, BlockUrlProviderStats stats) throws IOException {
+        InputStream inputStream = BlockUrlProviderCache.open(blockUrlProvider.id);
+        if (inputStream == null) {
+            LogUtils.info( "Provider is not cached: " + blockUrlProvider.url);
+            return null;
+        }
+        LogUtils.info( "Loading cached provider: " + blockUrlProvider.url);
+        // Reading the cache is not a download, it is part of the parse time
+        stats.cached = true;
+        return parseHostSource(new InputStreamReader(decompressArchive(inputStream), Charsets.UTF_8), stats);
+    }
+
+    @Nullable
+    private static DomainSet loadBlockUrls(BlockUrlProvider blockUrlProvider, boolean conditional, BlockUrlProviderStats stats) throws IOException, URISyntaxException {
+        Reader hostSource = openHostSource(blockUrlProvider, conditional, stats);
+        if (hostSource == null) {
+            LogUtils.info( "Provider is not modified: " + blockUrlProvider.url);
+            return null;
+        }
+        return parseHostSource(hostSource, stats);
+    }
+
+    private static DomainSet parseHostSource(Reader hostSource, BlockUrlProviderStats stats) throws IOException {
         Date start = new Date();
+        long downloadTime = stats.downloadTime;
 
-        // Read the host source and convert it to string
-        String hostFileStr = "";
-        if (URLUtil.isFileUrl(blockUrlProvider.url)) {
-            File file = new File(new URI(blockUrlProvider.url));
-            hostFileStr = Files.asCharSource(file, Charsets.UTF_8).read();
-        } else {
-            URL urlProviderUrl = new URL(blockUrlProvider.url);
-            URLConnection connection = urlProviderUrl.openConnection();
-            try (final Reader reader = new InputStreamReader(connection.getInputStream(), Charsets.UTF_8)) {
-                hostFileStr = CharStreams.toString(reader);
-            }
+        DomainSet blockUrls;
+        try (Reader reader = hostSource) {
+            blockUrls = BuildConfig.STREAMING_PARSER ?
+                    streamBlockUrls(reader, stats) :
+                    regexBlockUrls(reader, stats);
+        }
+
+        // Host files are parsed while they are downloaded, the time spent waiting for data is not part of parsing
+        Date end = new Date();
+        stats.parseTime = Math.max(0, end.getTime() - start.getTime() - (stats.downloadTime - downloadTime));
+        LogUtils.info( "Domain processing duration: " + (end.getTime() - start.getTime()) + " ms, " +
+                "download: " + stats.downloadTime + " ms, parse: " + stats.parseTime + " ms");
+
+        return blockUrls;
+    }
+
+    private static DomainSet streamBlockUrls(Reader hostSource, BlockUrlProviderStats stats) throws IOException {
+        // Set for unique domains, filled line by line while reading the host source
+        DomainSet uniqueBlockUrls = new DomainSet();
+        BufferedReader reader = new BufferedReader(hostSource);
+
+        // The format is detected from the first lines, they are parsed once it is known
+        List<String> sampleLines = new ArrayList<>();
+        int sampleSize = 0;
+        String line;
+        while (sampleSize < FORMAT_SAMPLE_SIZE && (line = reader.readLine()) != null) {
+            sampleLines.add(line);
+            sampleSize += line.length() + 1;
+        }
+        HostFileFormat format = HostFileFormat.detect(sampleLines);
+
+        for (String sampleLine : sampleLines) {
+            countLine(format.parseLine(sampleLine, uniqueBlockUrls), stats);
+        }
+        while ((line = reader.readLine()) != null) {
+            countLine(format.parseLine(line, uniqueBlockUrls), stats);
         }
 
+        LogUtils.info( "Host file format: " + format + ", lines: " + stats.lineCount + ", domains: " + uniqueBlockUrls.size() +
+                ", rejected lines: " + stats.commentLineCount + " comments, " + stats.unsupportedLineCount + " unsupported, " +
+                stats.invalidLineCount + " invalid");
+        return uniqueBlockUrls;
+    }
+
+    private static void countLine(int result, BlockUrlProviderStats stats) {
+        stats.lineCount++;
+        switch (result) {
+            case HostFileFormat.LINE_COMMENT:
+                stats.commentLineCount++;
+                break;
+            case HostFileFormat.LINE_UNSUPPORTED:
+                stats.unsupportedLineCount++;
+                break;
+            case HostFileFormat.LINE_INVALID:
+                stats.invalidLineCount++;
+                break;
+        }
+    }
+
+    private static DomainSet regexBlockUrls(Reader hostSource, BlockUrlProviderStats stats) throws IOException {
+        // Read the host source and convert it to string
+        String hostFileStr = CharStreams.toString(hostSource);
+
         // If we received any host file data
         if (!hostFileStr.isEmpty()) {
             // Clean up the host string
-            hostFileStr = linePattern.matcher(hostFileStr).replaceAll("");
+            hostFileStr = removeUnsupportedLines(hostFileStr, stats);
             hostFileStr = deadZonePattern.matcher(hostFileStr).replaceAll("");
             hostFileStr = commentPattern.matcher(hostFileStr).replaceAll("");
             hostFileStr = emptyLinePattern.matcher(hostFileStr).replaceAll("");
             hostFileStr = hostFileStr.toLowerCase();
 
             // Fetch valid domains
-            List<BlockUrl> blockUrls = BlockUrlPatternsMatch.validHostFileDomains(hostFileStr, blockUrlProvider.id);
+            return BlockUrlPatternsMatch.validHostFileDomains(hostFileStr);
+        }
 
-            Date end = new Date();
-            LogUtils.info( "Domain processing duration: " + (end.getTime() - start.getTime()) + " ms");
+        return new DomainSet();
+    }
 
-            return blockUrls;
+    // Removes the lines that do not start with a word and counts the lines while walking over them
+    // The domains are matched across the whole cleaned string, so this path does not count invalid lines
+    private static String removeUnsupportedLines(String hostFileStr, BlockUrlProviderStats stats) {
+        StringBuilder supportedLines = new StringBuilder(hostFileStr.length());
+        Matcher lineMatcher = linePattern.matcher(hostFileStr);
+        int end = 0;
+        while (lineMatcher.find()) {
+            countLineBreaks(hostFileStr, end, lineMatcher.start(), stats);
+            supportedLines.append(hostFileStr, end, lineMatcher.start());
+            String line = lineMatcher.group().trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                stats.commentLineCount++;
+            } else {
+                stats.unsupportedLineCount++;
+            }
+            end = lineMatcher.end();
         }
+        countLineBreaks(hostFileStr, end, hostFileStr.length(), stats);
+        supportedLines.append(hostFileStr, end, hostFileStr.length());
 
-        return new ArrayList<>();
+        // The last line has no line break
+        if (hostFileStr.charAt(hostFileStr.length() - 1) != '\n') {
+            stats.lineCount++;
+        }
+        LogUtils.info( "Lines: " + stats.lineCount + ", rejected lines: " + stats.commentLineCount + " comments, " +
+                stats.unsupportedLineCount + " unsupported");
+        return supportedLines.toString();
+    }
+
+    // Counts the lines ending in the range, the empty ones are counted as comments
+    private static void countLineBreaks(String hostFileStr, int start, int end, BlockUrlProviderStats stats) {
+        for (int i = start; i < end; i++) {
+            if (hostFileStr.charAt(i) == '\n') {
+                stats.lineCount++;
+                int previous = i - 1;
+                if (previous >= 0 && hostFileStr.charAt(previous) == '\r') {
+                    previous--;
+                }
+                if (previous < 0 || hostFileStr.charAt(previous) == '\n') {
+                    stats.commentLineCount++;
+                }
+            }
+        }
+    }
+
+    // Returns null if the provider has not been modified, the validators of a new download are kept in the provider
+    @Nullable
+    private static Reader openHostSource(BlockUrlProvider blockUrlProvider, boolean conditional, BlockUrlProviderStats stats) throws IOException, URISyntaxException {
+        Date start = new Date();
+        InputStream inputStream;
+        if (URLUtil.isFileUrl(blockUrlProvider.url)) {
+            File file = new File(new URI(blockUrlProvider.url));
+            InputStream fileStream = new FileInputStream(file);
+            try {
+                inputStream = decompressArchive(new MeteredInputStream(fileStream, stats));
+            } catch (IOException e) {
+                Closeables.closeQuietly(fileStream);
+                throw e;
+            }
+        } else {
+            URL urlProviderUrl = new URL(blockUrlProvider.url);
+            URLConnection connection = urlProviderUrl.openConnection();
+            InputStream connectionStream = null;
+            boolean opened = false;
+            try {
+                // Setting the header ourselves turns off any transparent decompression, it is done below
+                connection.setRequestProperty("Accept-Encoding", "gzip");
+                if (connection instanceof HttpURLConnection) {
+                    HttpURLConnection httpConnection = (HttpURLConnection) connection;
+                    if (conditional) {
+                        if (blockUrlProvider.etag != null) {
+                            httpConnection.setRequestProperty("If-None-Match", blockUrlProvider.etag);
+                        }
+                        if (blockUrlProvider.lastModified != null) {
+                            httpConnection.setRequestProperty("If-Modified-Since", blockUrlProvider.lastModified);
+                        }
+                    }
+                    if (httpConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        return null;
+                    }
+                    blockUrlProvider.etag = httpConnection.getHeaderField("ETag");
+                    blockUrlProvider.lastModified = httpConnection.getHeaderField("Last-Modified");
+                }
+                connectionStream = connection.getInputStream();
+                inputStream = new MeteredInputStream(connectionStream, stats);
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    inputStream = new GZIPInputStream(inputStream, BUFFER_SIZE);
+                }
+                // Only downloads are cached, local files are already on the device
+                inputStream = BlockUrlProviderCache.cache(blockUrlProvider.id, decompressArchive(inputStream));
+                opened = true;
+            } finally {
+                // The connection is only kept open for a host source which is returned
+                if (!opened) {
+                    Closeables.closeQuietly(connectionStream);
+                    if (connection instanceof HttpURLConnection) {
+                        ((HttpURLConnection) connection).disconnect();
+                    }
+                }
+            }
+        }
+        stats.downloadTime += new Date().getTime() - start.getTime();
+        return new InputStreamReader(inputStream, Charsets.UTF_8);
+    }
+
+    // Gzip archives, e.g. hosts.gz, are recognized by their magic number and decompressed while reading
+    private static InputStream decompressArchive(InputStream inputStream) throws IOException {
+        InputStream bufferedStream = new BufferedInputStream(inputStream, BUFFER_SIZE);
+        bufferedStream.mark(2);
+        int magic = bufferedStream.read() | (bufferedStream.read() << 8);
+        bufferedStream.reset();
+        if (magic == GZIPInputStream.GZIP_MAGIC) {
+            return new GZIPInputStream(bufferedStream, BUFFER_SIZE);
+        }
+        return bufferedStream;
+    }
+
+    // Applies only the added and removed domains of a provider, together with its new count, in one transaction
+    // The metrics of the update are stored together with the domains
+    public static void updateBlockUrls(BlockUrlProvider blockUrlProvider, DomainSet blockUrls, BlockUrlProviderStats stats, BlocklistDatabase blocklistDatabase) {
+        Date start = new Date();
+
+        SupportSQLiteDatabase database = blocklistDatabase.getOpenHelper().getWritableDatabase();
+        beginBulkLoad(blocklistDatabase);
+        try {
+            blocklistDatabase.runInTransaction(() -> {
+                List<Long> removedDomainIds = new ArrayList<>();
+                BitSet storedUrls = new BitSet(blockUrls.size());
+                findStoredUrls(blockUrlProvider.id, blockUrls, storedUrls, removedDomainIds, database);
+
+                for (List<Long> chunk : Lists.partition(removedDomainIds, QUERY_CHUNK_SIZE)) {
+                    blocklistDatabase.blockUrlDao().deleteByDomainIds(blockUrlProvider.id, chunk);
+                }
+                if (!removedDomainIds.isEmpty()) {
+                    blocklistDatabase.domainDao().deleteUnused();
+                }
+
+                long insertStart = System.nanoTime();
+                int addedCount = insertBlockUrls(blockUrlProvider.id, blockUrls, storedUrls, database);
+                long insertTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - insertStart);
+
+                blockUrlProvider.count = blockUrls.size();
+                blockUrlProvider.lastUpdated = new Date();
+                blockUrlProvider.domainsBuiltAt = blockUrlProvider.lastUpdated;
+                blocklistDatabase.blockUrlProviderDao().updateBlockUrlProviders(blockUrlProvider);
+
+                LogUtils.info( "Provider " + blockUrlProvider.url + ": " + addedCount + " added, " + removedDomainIds.size() + " removed");
+                LogUtils.info( "Inserted " + addedCount + " domains in " + insertTime + " ms (" +
+                        (addedCount * 1000L / Math.max(insertTime, 1)) + " rows/s)");
+                return null;
+            });
+        } finally {
+            endBulkLoad(blocklistDatabase);
+        }
+
+        stats.providerId = blockUrlProvider.id;
+        stats.updatedAt = blockUrlProvider.lastUpdated;
+        stats.domainCount = blockUrls.size();
+        stats.writeTime = new Date().getTime() - start.getTime();
+        blocklistDatabase.runInTransaction(() -> {
+            blocklistDatabase.blockUrlProviderStatsDao().insert(stats);
+            blocklistDatabase.blockUrlProviderStatsDao().deleteOlder(blockUrlProvider.id, STATS_HISTORY_SIZE);
+        });
+    }
+
+    // Marks the stored domains of the provider which are still part of it and collects the ids of the others.
+    // The stored domains are streamed from a cursor into a reused buffer, no entity or string is created per domain.
+    private static void findStoredUrls(long providerId, DomainSet blockUrls, BitSet storedUrls, List<Long> removedDomainIds,
+                                       SupportSQLiteDatabase database) {
+        CharArrayBuffer url = new CharArrayBuffer(256);
+        try (Cursor cursor = database.query("SELECT Domain._id, Domain.url FROM BlockUrl INNER JOIN Domain ON Domain._id = BlockUrl.domainId " +
+                "WHERE BlockUrl.urlProviderId = ?", new Object[]{providerId})) {
+            while (cursor.moveToNext()) {
+                cursor.copyStringToBuffer(1, url);
+                int index = blockUrls.indexOf(CharBuffer.wrap(url.data, 0, url.sizeCopied));
+                if (index == -1) {
+                    removedDomainIds.add(cursor.getLong(0));
+                } else {
+                    storedUrls.set(index);
+                }
+            }
+        }
+    }
+
+    // Links the provider to the domains which are not stored yet, the domains which are not part of another
+    // provider are added first. The statements are compiled once and only rebound per domain, no entities are created.
+    private static int insertBlockUrls(long providerId, DomainSet blockUrls, BitSet storedUrls, SupportSQLiteDatabase database) throws IOException {
+        int addedCount = 0;
+        try (SupportSQLiteStatement insertDomain = database.compileStatement("INSERT OR IGNORE INTO Domain (url, selectedCount) VALUES (?, 0)");
+             SupportSQLiteStatement selectDomainId = database.compileStatement("SELECT _id FROM Domain WHERE url = ?");
+             SupportSQLiteStatement insertBlockUrl = database.compileStatement("INSERT OR IGNORE INTO BlockUrl (urlProviderId, domainId) VALUES (?, ?)");
+             SupportSQLiteStatement insertSearch = database.compileStatement(DomainSearchIndex.INSERT_SQL)) {
+            insertBlockUrl.bindLong(1, providerId);
+            for (int index = storedUrls.nextClearBit(0); index < blockUrls.size(); index = storedUrls.nextClearBit(index + 1)) {
+                String url = blockUrls.get(index);
+                insertDomain.bindString(1, url);
+                long domainId = insertDomain.executeInsert();
+                if (domainId == -1) {
+                    // The domain is already part of another provider
+                    selectDomainId.bindString(1, url);
+                    domainId = selectDomainId.simpleQueryForLong();
+                } else {
+                    insertSearch.bindLong(1, domainId);
+                    insertSearch.bindString(2, DomainSearchIndex.getTrigrams(url));
+                    insertSearch.executeInsert();
+                }
+                insertBlockUrl.bindLong(2, domainId);
+                insertBlockUrl.executeInsert();
+                addedCount++;
+            }
+        }
+        return addedCount;
+    }
+
+    // Relaxes the durability of the blocklist database until the matching endBulkLoad(). In WAL mode a crash during
+    // a load can only lose the update, not corrupt the database. Loads may overlap, the first one relaxes the setting
+    // of the shared connection and the last one restores it.
+    public static void beginBulkLoad(BlocklistDatabase blocklistDatabase) {
+        synchronized (bulkLoadLock) {
+            if (bulkLoadCount++ == 0) {
+                SupportSQLiteDatabase database = blocklistDatabase.getOpenHelper().getWritableDatabase();
+                synchronous = getSynchronous(database);
+                database.execSQL("PRAGMA synchronous = NORMAL");
+            }
+        }
+    }
+
+    public static void endBulkLoad(BlocklistDatabase blocklistDatabase) {
+        synchronized (bulkLoadLock) {
+            if (--bulkLoadCount == 0) {
+                blocklistDatabase.getOpenHelper().getWritableDatabase().execSQL("PRAGMA synchronous = " + synchronous);
+            }
+        }
+    }
+
+    private static int getSynchronous(SupportSQLiteDatabase database) {
+        try (Cursor cursor = database.query("PRAGMA synchronous")) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : SYNCHRONOUS_FULL;
+        }
     }
 
     public static List<String> getUserBlockedUrls(AppDatabase appDatabase, boolean enableLog, Handler handler) {
@@ -95,37 +462,42 @@ public class BlockUrlUtils {
         return list;
     }
 
-    public static int getAllBlockedUrlsCount(AppDatabase appDatabase) {
-        return appDatabase.blockUrlProviderDao().getUniqueBlockedUrlsCount();
+    public static int getAllBlockedUrlsCount(BlocklistDatabase blocklistDatabase) {
+        return SelectedDomainCounter.getCount(blocklistDatabase);
     }
 
-    public static List<String> getAllBlockedUrls(AppDatabase appDatabase) {
-        return appDatabase.blockUrlProviderDao().getUniqueBlockedUrls();
+    public static int getBlockedUrlsCount(long providerId, BlocklistDatabase blocklistDatabase) {
+        return blocklistDatabase.blockUrlDao().getCountByProviderId(providerId);
     }
 
-    public static List<String> getBlockedUrls(long providerId, AppDatabase appDatabase) {
-        return appDatabase.blockUrlDao().getUrlsByProviderId(providerId);
+    // One page of the unique domains of all selected providers, in alphabetical order
+    // afterUrl is the last domain of the previous page if it is known, the page is then found without an offset
+    public static List<String> getAllBlockedUrlsPage(int offset, int limit, @Nullable String afterUrl, BlocklistDatabase blocklistDatabase) {
+        return afterUrl == null ?
+                blocklistDatabase.blockUrlProviderDao().getUniqueBlockedUrlsPage(offset, limit) :
+                blocklistDatabase.blockUrlProviderDao().getUniqueBlockedUrlsPageAfter(afterUrl, limit);
     }
 
-    public static List<String> getFilteredBlockedUrls(String filterText, AppDatabase appDatabase) {
-        List<String> result = new ArrayList<>();
-        List<BlockUrlProvider> blockUrlProviders = appDatabase.blockUrlProviderDao().getBlockUrlProviderBySelectedFlag(1);
-        for (BlockUrlProvider blockUrlProvider : blockUrlProviders) {
-            List<BlockUrl> blockUrls = appDatabase.blockUrlDao().getByUrl(blockUrlProvider.id, filterText);
-            for (BlockUrl blockUrl: blockUrls) {
-                result.add(blockUrl.url);
+    // One page of the domains of a provider, in the order they were added
+    // afterUrl is the last domain of the previous page if it is known, the page is then found without an offset
+    public static List<String> getBlockedUrlsPage(long providerId, int offset, int limit, @Nullable String afterUrl, BlocklistDatabase blocklistDatabase) {
+        if (afterUrl != null) {
+            List<String> page = blocklistDatabase.blockUrlDao().getUrlsPageByProviderIdAfter(providerId, afterUrl, limit);
+            // The domain is not found anymore if the provider has been updated in the meantime
+            if (!page.isEmpty()) {
+                return page;
             }
         }
-        return result;
+        return blocklistDatabase.blockUrlDao().getUrlsPageByProviderId(providerId, offset, limit);
     }
 
-    public static List<String> getFilteredBlockedUrls(String filterText, long providerId, AppDatabase appDatabase) {
-        List<String> result = new ArrayList<>();
-        List<BlockUrl> blockUrls = appDatabase.blockUrlDao().getByUrl(providerId, filterText);
-        for (BlockUrl blockUrl : blockUrls) {
-            result.add(blockUrl.url);
-        }
-        return result;
+    // Searches the domains of all selected providers which contain the text
+    public static List<String> getFilteredBlockedUrls(String text, BlocklistDatabase blocklistDatabase) {
+        return DomainSearchIndex.search(blocklistDatabase, text, null);
+    }
+
+    public static List<String> getFilteredBlockedUrls(String text, long providerId, BlocklistDatabase blocklistDatabase) {
+        return DomainSearchIndex.search(blocklistDatabase, text, providerId);
     }
 
     public static boolean isDomainLimitAboveDefault() {
@@ -134,4 +506,44 @@ public class BlockUrlUtils {
         return domainLimit > defaultDomainLimit;
     }
 
-}
\ No newline at end of file
+
+    // Counts the bytes read and the time spent waiting for them
+    private static class MeteredInputStream extends FilterInputStream {
+        private final BlockUrlProviderStats stats;
+        private long readNanos;
+
+        MeteredInputStream(InputStream in, BlockUrlProviderStats stats) {
+            super(in);
+            this.stats = stats;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            readNanos += System.nanoTime() - start;
+            if (b != -1) {
+                stats.downloadBytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int count = super.read(buffer, offset, length);
+            readNanos += System.nanoTime() - start;
+            if (count > 0) {
+                stats.downloadBytes += count;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            stats.downloadTime += TimeUnit.NANOSECONDS.toMillis(readNanos);
+            readNanos = 0;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.fusionjack.adhell3.utils;
+
+import android.database.Cursor;
+
+import com.fusionjack.adhell3.App;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
+import com.fusionjack.adhell3.db.SelectedDomainCounter;
+import com.google.common.base.Charsets;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Sorted unique domains of the selected providers, compiled into a file after the providers are updated
+ * so that the domain rules are applied from a memory mapped file instead of querying the database.
+ * The database stays the source of truth, the snapshot is compiled again whenever the domains of the
+ * selected providers changed since it was written.
+ *
+ * Layout: a header (magic, format, version of the domains, domain count, data length, CRC32 of the data)
+ * followed by the front coded domains. Every domain is stored as the length of the prefix it shares with
+ * the previous domain, the length of the rest and the rest itself.
+ *
+ * Once the domains are pushed to Knox, a copy of the snapshot is kept as the applied snapshot, the next push
+ * only adds and removes the domains which differ from it.
+ */
+public final class BlockedDomainSnapshot implements Iterable<String> {
+
+    private static final String SNAPSHOT_FILE = "blocked_domains.snapshot";
+    private static final String APPLIED_SNAPSHOT_FILE = "applied_domains.snapshot";
+    private static final int MAGIC = 0x41444853;
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 8;
+    private static final int MAX_DOMAIN_LENGTH = 255;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final ByteBuffer data;
+    private final int size;
+    private final long version;
+    private final long checksum;
+
+    private BlockedDomainSnapshot(ByteBuffer data, int size, long version, long checksum) {
+        this.data = data;
+        this.size = size;
+        this.version = version;
+        this.checksum = checksum;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        ByteBuffer buffer = data.duplicate();
+        return new Iterator<String>() {
+            private final byte[] domain = new byte[MAX_DOMAIN_LENGTH];
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int prefixLength = buffer.get() & 0xff;
+                int suffixLength = buffer.get() & 0xff;
+                buffer.get(domain, prefixLength, suffixLength);
+                index++;
+                return new String(domain, 0, prefixLength + suffixLength, Charsets.US_ASCII);
+            }
+        };
+    }
+
+    // Compiles the snapshot if it is missing or stale, e.g. right after the providers are updated
+    public static void refresh(BlocklistDatabase blocklistDatabase) {
+        try {
+            open(blocklistDatabase);
+        } catch (IOException e) {
+            LogUtils.error("Cannot compile the blocked domains", e);
+        }
+    }
+
+    // Returns the snapshot of the current domains, it is compiled first if needed
+    public static BlockedDomainSnapshot open(BlocklistDatabase blocklistDatabase) throws IOException {
+        File file = getSnapshotFile();
+        BlockedDomainSnapshot snapshot = read(file, SelectedDomainCounter.getVersion(blocklistDatabase));
+        if (snapshot == null) {
+            long version = compile(blocklistDatabase, file);
+            snapshot = read(file, version);
+            if (snapshot == null) {
+                throw new IOException("Cannot read " + file);
+            }
+        }
+        return snapshot;
+    }
+
+    // Returns the snapshot which has been pushed to Knox, or null if it is missing or not of the given version
+    public static BlockedDomainSnapshot openApplied(long version) throws IOException {
+        return read(getAppliedSnapshotFile(), version);
+    }
+
+    // Keeps a copy of this snapshot as the applied snapshot, the snapshot file itself might be compiled again meanwhile
+    public void saveAsApplied() throws IOException {
+        File file = getAppliedSnapshotFile();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            randomAccessFile.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT).putLong(version).putInt(size).putInt(data.capacity()).putLong(checksum);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            ByteBuffer buffer = data.duplicate();
+            buffer.rewind();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    public static void deleteApplied() {
+        File file = getAppliedSnapshotFile();
+        if (file.exists() && !file.delete()) {
+            LogUtils.info( "Cannot delete applied snapshot: " + file);
+        }
+    }
+
+    // Returns null if the file is missing, stale or corrupt
+    private static BlockedDomainSnapshot read(File file, long version) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT || buffer.getLong() != version) {
+                return null;
+            }
+            int size = buffer.getInt();
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (size < 0 || length != buffer.remaining()) {
+                return null;
+            }
+
+            if (checksum(buffer.duplicate()) != checksum) {
+                LogUtils.info( "Blocked domain snapshot is corrupt");
+                return null;
+            }
+            return new BlockedDomainSnapshot(buffer.slice(), size, version, checksum);
+        }
+    }
+
+    private static long checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[BUFFER_SIZE];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(bytes.length, buffer.remaining());
+            buffer.get(bytes, 0, length);
+            crc.update(bytes, 0, length);
+        }
+        return crc.getValue();
+    }
+
+    // Returns the version of the compiled domains
+    private static long compile(BlocklistDatabase blocklistDatabase, File file) throws IOException {
+        long start = System.currentTimeMillis();
+        File tempFile = new File(file.getPath() + ".tmp");
+        long version;
+        int size = 0;
+        CRC32 crc = new CRC32();
+
+        // The version and the domains are read in one transaction, so that they match
+        blocklistDatabase.beginTransaction();
+        try (Cursor cursor = blocklistDatabase.query("SELECT url FROM Domain WHERE selectedCount > 0 ORDER BY url ASC", null);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE))) {
+            version = SelectedDomainCounter.getVersion(blocklistDatabase);
+
+            // The header is written once the data is known
+            output.write(new byte[HEADER_SIZE]);
+            DataOutputStream data = new DataOutputStream(new CheckedOutputStream(output, crc));
+            byte[] previous = new byte[0];
+            while (cursor.moveToNext()) {
+                byte[] domain = cursor.getString(0).getBytes(Charsets.US_ASCII);
+                if (domain.length > MAX_DOMAIN_LENGTH) {
+                    throw new IOException("Domain is too long: " + cursor.getString(0));
+                }
+                int prefixLength = 0;
+                int maxPrefixLength = Math.min(previous.length, domain.length);
+                while (prefixLength < maxPrefixLength && previous[prefixLength] == domain[prefixLength]) {
+                    prefixLength++;
+                }
+                data.writeByte(prefixLength);
+                data.writeByte(domain.length - prefixLength);
+                data.write(domain, prefixLength, domain.length - prefixLength);
+                previous = domain;
+                size++;
+            }
+            data.flush();
+            blocklistDatabase.setTransactionSuccessful();
+        } catch (IOException e) {
+            if (!tempFile.delete()) {
+                LogUtils.info( "Cannot delete temporary file: " + tempFile);
+            }
+            throw e;
+        } finally {
+            blocklistDatabase.endTransaction();
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw")) {
+            long length = randomAccessFile.length() - HEADER_SIZE;
+            randomAccessFile.writeInt(MAGIC);
+            randomAccessFile.writeInt(FORMAT);
+            randomAccessFile.writeLong(version);
+            randomAccessFile.writeInt(size);
+            randomAccessFile.writeInt((int) length);
+            randomAccessFile.writeLong(crc.getValue());
+            randomAccessFile.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Cannot write " + file);
+        }
+        LogUtils.info( "Compiled " + size + " blocked domains into " + file.length() + " bytes in " +
+                (System.currentTimeMillis() - start) + " ms");
+        return version;
+    }
+
+    private static File getSnapshotFile() {
+        return new File(App.get().getFilesDir(), SNAPSHOT_FILE);
+    }
+
+    private static File getAppliedSnapshotFile() {
+        return new File(App.get().getFilesDir(), APPLIED_SNAPSHOT_FILE);
+    }
+}
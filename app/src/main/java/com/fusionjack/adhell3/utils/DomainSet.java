@@ -0,0 +1,169 @@
+package com.fusionjack.adhell3.utils;
+
+import com.google.common.base.Charsets;
+
+import java.util.Arrays;
+
+/**
+ * Set of unique domains used while parsing a host file. The domains are kept as lower case ASCII bytes
+ * in one shared arena and deduplicated by an open addressing table of entry indexes, hashed with 64-bit FNV-1a,
+ * so that an entry costs little more than its characters instead of a String and a hash map node.
+ */
+public final class DomainSet {
+
+    private static final int INITIAL_ARENA_SIZE = 64 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private byte[] arena = new byte[INITIAL_ARENA_SIZE];
+    private int arenaSize;
+
+    // Entry i is stored in arena[offsets[i]..offsets[i + 1]]
+    private int[] offsets = new int[INITIAL_CAPACITY + 1];
+    private int size;
+
+    // Entry index + 1 per slot, 0 is an empty slot. The table is kept at most three quarters full.
+    private int[] table = new int[INITIAL_CAPACITY];
+
+    public int size() {
+        return size;
+    }
+
+    public boolean add(CharSequence domain) {
+        return add("", domain, 0, domain.length());
+    }
+
+    // Adds prefix + s[start..end] in lower case, the characters must be ASCII
+    public boolean add(String prefix, CharSequence s, int start, int end) {
+        int length = prefix.length() + end - start;
+        ensureArenaCapacity(length);
+
+        // The entry is written at the end of the arena, it is only kept if it is not a duplicate
+        int offset = arenaSize;
+        for (int i = 0; i < prefix.length(); i++) {
+            arena[offset++] = toAsciiLowerCase(prefix.charAt(i));
+        }
+        for (int i = start; i < end; i++) {
+            arena[offset++] = toAsciiLowerCase(s.charAt(i));
+        }
+
+        long hash = hash(arena, arenaSize, offset);
+        int slot = findSlot(hash, arena, arenaSize, length);
+        if (table[slot] != 0) {
+            return false;
+        }
+
+        if (size + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length + (offsets.length >> 1));
+        }
+        if ((size + 1) * 4L > table.length * 3L) {
+            rehash(table.length * 2);
+            slot = findSlot(hash, arena, arenaSize, length);
+        }
+        offsets[size] = arenaSize;
+        offsets[size + 1] = offset;
+        table[slot] = ++size;
+        arenaSize = offset;
+        return true;
+    }
+
+    // Returns the index of the domain, or -1 if it is not in the set
+    public int indexOf(CharSequence domain) {
+        int length = domain.length();
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            char c = domain.charAt(i);
+            if (c > 0x7f) {
+                return -1;
+            }
+            bytes[i] = toAsciiLowerCase(c);
+        }
+        int entry = table[findSlot(hash(bytes, 0, length), bytes, 0, length)];
+        return entry - 1;
+    }
+
+    public boolean contains(CharSequence domain) {
+        return indexOf(domain) != -1;
+    }
+
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return new String(arena, offsets[index], offsets[index + 1] - offsets[index], Charsets.US_ASCII);
+    }
+
+    private int findSlot(long hash, byte[] bytes, int offset, int length) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0 || equalsEntry(entry - 1, bytes, offset, length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean equalsEntry(int index, byte[] bytes, int offset, int length) {
+        int entryOffset = offsets[index];
+        if (offsets[index + 1] - entryOffset != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (arena[entryOffset + i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The hashes are not kept per entry, they are cheap to compute again from the arena
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = mix(hash(arena, offsets[index], offsets[index + 1])) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index + 1;
+        }
+    }
+
+    private void ensureArenaCapacity(int length) {
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length + (arena.length >> 1), arenaSize + length));
+        }
+    }
+
+    // FNV-1a
+    private static long hash(byte[] bytes, int start, int end) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            hash ^= bytes[i];
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Spreads the bits of the hash, the low bits of FNV-1a are weak for similar domains
+    private static int mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    private static byte toAsciiLowerCase(char c) {
+        if (c > 0x7f) {
+            throw new IllegalArgumentException("Not an ASCII domain character: " + c);
+        }
+        if (c >= 'A' && c <= 'Z') {
+            c += 'a' - 'A';
+        }
+        return (byte) c;
+    }
+}
@@ -0,0 +1,195 @@
+package com.fusionjack.adhell3.utils;
+
+/**
+ * Hand-written equivalent of the domain, wildcard and filter patterns in {@link BlockUrlPatternsMatch}.
+ * All checks work on a window of a CharSequence and don't allocate, as they run for every line of a host file.
+ */
+final class DomainValidator {
+
+    static final int INVALID = 0;
+    static final int VALID = 1;
+    // Valid, but Knox needs a wildcard prefix because the first label doesn't contain any letter
+    static final int VALID_WITHOUT_LETTER_PREFIX = 2;
+
+    private static final int MIN_DOMAIN_LENGTH = 4;
+    private static final int MAX_DOMAIN_LENGTH = 253;
+
+    private static final String THIRD_PARTY = "third-party";
+
+    private DomainValidator() {
+    }
+
+    // DOMAIN_PATTERN: something.com, between 4 and 253 characters
+    static int checkDomain(CharSequence s, int start, int end) {
+        int length = end - start;
+        if (length < MIN_DOMAIN_LENGTH || length > MAX_DOMAIN_LENGTH) {
+            return INVALID;
+        }
+        return checkDomainLabels(s, start, end);
+    }
+
+    // Labels of DOMAIN_PATTERN without the length restriction, the top level label must be letters only
+    static int checkDomainLabels(CharSequence s, int start, int end) {
+        boolean firstLabel = true;
+        boolean letterPrefix = false;
+        boolean lettersOnly = true;
+        int labelStart = start;
+        int dots = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                if (i == labelStart || s.charAt(i - 1) == '-') {
+                    return INVALID;
+                }
+                firstLabel = false;
+                lettersOnly = true;
+                labelStart = i + 1;
+                dots++;
+            } else if (isLetter(c)) {
+                if (firstLabel) {
+                    letterPrefix = true;
+                }
+            } else if (isDigit(c)) {
+                lettersOnly = false;
+            } else if (c == '-') {
+                if (i == labelStart) {
+                    return INVALID;
+                }
+                lettersOnly = false;
+            } else {
+                return INVALID;
+            }
+        }
+
+        // At least one label in front of a top level label of two or more letters
+        if (dots == 0 || end - labelStart < 2 || !lettersOnly) {
+            return INVALID;
+        }
+        return letterPrefix ? VALID : VALID_WITHOUT_LETTER_PREFIX;
+    }
+
+    // FILTER_PATTERN: ||something.com^ with an optional $third-party or $option,third-party
+    // Returns the end of the domain, i.e. the index of '^', or -1 if it is not a filter.
+    // The domain itself still needs to be checked with checkDomainLabels().
+    static int filterDomainEnd(CharSequence s, int start, int end) {
+        if (end - start < 3 || s.charAt(start) != '|' || s.charAt(start + 1) != '|') {
+            return -1;
+        }
+
+        int caret;
+        if (s.charAt(end - 1) == '^') {
+            caret = end - 1;
+        } else {
+            // Options are parsed backwards, they are much shorter than the domain
+            int index = end - THIRD_PARTY.length();
+            if (index <= start + 2 || !regionMatches(s, index, THIRD_PARTY)) {
+                return -1;
+            }
+            index--;
+            if (s.charAt(index) == ',') {
+                int optionEnd = index;
+                while (index > start && isLetter(s.charAt(index - 1))) {
+                    index--;
+                }
+                if (index == optionEnd) {
+                    return -1;
+                }
+                index--;
+            }
+            if (index <= start + 2 || s.charAt(index) != '$' || s.charAt(index - 1) != '^') {
+                return -1;
+            }
+            caret = index - 1;
+        }
+        return caret > start + 2 ? caret : -1;
+    }
+
+    // WILDCARD_PATTERN: *something.com, *.something.com, *-something.com, something.*, something-* or something*
+    static boolean isWildcard(CharSequence s, int start, int end) {
+        if (end <= start) {
+            return false;
+        }
+
+        int labelsStart = start;
+        int labelsEnd = end;
+        boolean wildcardPrefix = s.charAt(start) == '*';
+        if (wildcardPrefix) {
+            labelsStart++;
+            if (labelsStart < labelsEnd && isWildcardSeparator(s.charAt(labelsStart))) {
+                labelsStart++;
+            }
+        }
+        boolean wildcardSuffix = end - start > 1 && s.charAt(end - 1) == '*';
+        if (wildcardSuffix && labelsEnd - 1 >= labelsStart) {
+            labelsEnd--;
+            if (labelsEnd - 1 >= labelsStart && isWildcardSeparator(s.charAt(labelsEnd - 1))) {
+                labelsEnd--;
+            }
+        }
+        if (!wildcardPrefix && !wildcardSuffix) {
+            return false;
+        }
+        if (labelsEnd <= labelsStart) {
+            return false;
+        }
+
+        // One or more labels, no top level label restriction
+        int labelStart = labelsStart;
+        for (int i = labelsStart; i < labelsEnd; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                if (i == labelStart || s.charAt(i - 1) == '-') {
+                    return false;
+                }
+                labelStart = i + 1;
+            } else if (c == '-') {
+                if (i == labelStart) {
+                    return false;
+                }
+            } else if (!isLetter(c) && !isDigit(c)) {
+                return false;
+            }
+        }
+        return labelStart < labelsEnd && s.charAt(labelsEnd - 1) != '-';
+    }
+
+    // Knox seems invalidate a domain if the prefix does not contain any letters
+    static boolean hasLetterPrefix(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                return false;
+            }
+            if (isLetter(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(CharSequence s, int start, String lowerCase) {
+        for (int i = 0; i < lowerCase.length(); i++) {
+            char c = s.charAt(start + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWildcardSeparator(char c) {
+        return c == '.' || c == '-';
+    }
+
+    // The patterns are case insensitive
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -3,8 +3,10 @@ package com.fusionjack.adhell3.utils;
 import android.os.Handler;
 
 import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
 import com.fusionjack.adhell3.db.entity.AppInfo;
 import com.fusionjack.adhell3.db.entity.ReportBlockedUrl;
+import com.fusionjack.adhell3.db.entity.ReportBlockedUrlStats;
 import com.samsung.android.knox.AppIdentity;
 import com.samsung.android.knox.net.firewall.DomainFilterReport;
 import com.samsung.android.knox.net.firewall.DomainFilterRule;
@@ -19,13 +21,20 @@ import java.util.Calendar;
 import java.util.List;
 
 public final class FirewallUtils {
+    private static final int REPORT_RETENTION_DAYS = 90;
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+    // Period of the blocked domains which are shown
+    private static final int REPORT_HOURS = 72;
+
     private static FirewallUtils instance;
     private Firewall firewall;
     private AppDatabase appDatabase;
+    private BlocklistDatabase blocklistDatabase;
 
     private FirewallUtils() {
         firewall = AdhellFactory.getInstance().getFirewall();
         appDatabase = AdhellFactory.getInstance().getAppDatabase();
+        blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
     }
 
     public static FirewallUtils getInstance() {
@@ -49,17 +58,24 @@ public final class FirewallUtils {
         }
     }
 
-    public void addFirewallRules(FirewallRule[] firewallRules, Handler handler) throws Exception {
+    // Adds the rules in one call, returns the response of each rule in the order of the rules
+    public FirewallResponse[] addFirewallRules(FirewallRule[] firewallRules, Handler handler) throws Exception {
         if (firewall == null) {
             throw new Exception("Knox Firewall is not initialized");
         }
 
         try {
             FirewallResponse[] response = firewall.addRules(firewallRules);
-            handleResponse(response, handler);
+            if (response == null) {
+                Exception ex = new Exception("There was no response from Knox Firewall");
+                LogUtils.error("There was no response from Knox Firewall", ex, handler);
+                throw ex;
+            }
+            return response;
         } catch (SecurityException ex) {
-            // Missing required MDM permission
+            // Missing required MDM permission, none of the rules has been added
             LogUtils.error("Failed to add firewall rules to Knox Firewall", ex, handler);
+            throw ex;
         }
     }
 
@@ -145,27 +161,35 @@ public final class FirewallUtils {
         return stat;
     }
 
-    public List<ReportBlockedUrl> getReportBlockedUrl() {
-        List<ReportBlockedUrl> reportBlockedUrls = new ArrayList<>();
-        if (firewall == null) {
-            return reportBlockedUrls;
-        }
+    // Hourly stats of the blocked domains of the past 72 hours, as far as they have been rolled up
+    public List<ReportBlockedUrlStats> getReportBlockedUrl() {
+        // Only the hours which lie completely within the past 72 hours, the hour of an event is rounded down
+        long since = System.currentTimeMillis() - REPORT_HOURS * HOUR_MILLIS;
+        return blocklistDatabase.reportBlockedUrlStatsDao().getSince(getHour(since + HOUR_MILLIS - 1));
+    }
 
-        List<DomainFilterReport> reports = firewall.getDomainFilterReport(null);
-        if (reports == null) {
-            return reportBlockedUrls;
+    // Adds the events which Knox reported since the last roll-up to the hourly stats and drops the expired stats
+    public void rollUpReportBlockedUrl() {
+        if (firewall != null) {
+            List<DomainFilterReport> reports = firewall.getDomainFilterReport(null);
+            if (reports != null) {
+                insertReportBlockedUrls(reports);
+            }
         }
+        rollUpReportBlockedUrls();
 
-        long time = tree_days();
-        AppDatabase appDatabase = AdhellFactory.getInstance().getAppDatabase();
-        appDatabase.reportBlockedUrlDao().deleteBefore(time);
+        blocklistDatabase.reportBlockedUrlStatsDao().deleteBefore(getHour(daysAgo(REPORT_RETENTION_DAYS)));
+    }
 
-        ReportBlockedUrl lastBlockedUrl = appDatabase.reportBlockedUrlDao().getLastBlockedDomain();
-        long lastBlockedTimestamp = 0;
+    private void insertReportBlockedUrls(List<DomainFilterReport> reports) {
+        // Knox keeps reporting the events which are stored already
+        ReportBlockedUrl lastBlockedUrl = blocklistDatabase.reportBlockedUrlDao().getLastBlockedDomain();
+        long lastBlockedTimestamp = blocklistDatabase.reportBlockedUrlStatsDao().getLastBlockDate() / 1000;
         if (lastBlockedUrl != null) {
-            lastBlockedTimestamp = lastBlockedUrl.blockDate / 1000;
+            lastBlockedTimestamp = Math.max(lastBlockedTimestamp, lastBlockedUrl.blockDate / 1000);
         }
 
+        List<ReportBlockedUrl> reportBlockedUrls = new ArrayList<>();
         for (DomainFilterReport b : reports) {
             if (b.getTimeStamp() > lastBlockedTimestamp) {
                 ReportBlockedUrl reportBlockedUrl =
@@ -173,17 +197,35 @@ public final class FirewallUtils {
                 reportBlockedUrls.add(reportBlockedUrl);
             }
         }
-        appDatabase.reportBlockedUrlDao().insertAll(reportBlockedUrls);
+        blocklistDatabase.reportBlockedUrlDao().insertAll(reportBlockedUrls);
+    }
 
-        return appDatabase.reportBlockedUrlDao().getReportBlockUrlBetween(time, System.currentTimeMillis());
+    // Adds the stored events to the hourly stats and removes them, the stats only grow with the number of distinct domains per hour
+    private void rollUpReportBlockedUrls() {
+        blocklistDatabase.runInTransaction(() -> {
+            List<ReportBlockedUrlStats> hourlyStats = blocklistDatabase.reportBlockedUrlDao().getHourlyStats();
+            for (ReportBlockedUrlStats stats : hourlyStats) {
+                if (blocklistDatabase.reportBlockedUrlStatsDao().insert(stats) == -1) {
+                    blocklistDatabase.reportBlockedUrlStatsDao().add(stats.hour, stats.packageName, stats.url, stats.count, stats.lastBlockDate);
+                }
+            }
+            blocklistDatabase.reportBlockedUrlDao().deleteAll();
+            if (!hourlyStats.isEmpty()) {
+                LogUtils.info( "Rolled up blocked domain events into " + hourlyStats.size() + " hourly stats");
+            }
+        });
     }
 
-    private long tree_days() {
+    private static long daysAgo(int days) {
         final Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DATE, -3);
+        cal.add(Calendar.DATE, -days);
         return cal.getTimeInMillis();
     }
 
+    private static long getHour(long time) {
+        return time - time % HOUR_MILLIS;
+    }
+
     private void handleResponse(FirewallResponse[] response, Handler handler) throws Exception {
         if (response == null) {
             Exception ex = new Exception("There was no response from Knox Firewall");
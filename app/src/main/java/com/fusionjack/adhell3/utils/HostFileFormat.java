@@ -0,0 +1,345 @@
+package com.fusionjack.adhell3.utils;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formats of the lists a provider can serve. The format of a list is detected from its first lines,
+ * every line is then parsed by the fast path of that format. Lines the format doesn't accept,
+ * e.g. in mixed lists, are passed on to the format that accepts them instead of being dropped.
+ */
+public enum HostFileFormat {
+
+    // 0.0.0.0 something.com
+    HOSTS {
+        @Override
+        boolean accepts(String line, int start) {
+            return addressEnd(line, start) != -1;
+        }
+
+        @Override
+        boolean parse(String line, int start, DomainSet domains) {
+            int end = commentStart(line, start);
+            int index = addressEnd(line, start);
+            // Like the former patterns, a line with several names is not taken apart
+            int nameEnd = tokenEnd(line, index, end);
+            return nameEnd > index && nameEnd == end && BlockUrlPatternsMatch.addValidHostFileDomain(line, index, nameEnd, domains);
+        }
+    },
+
+    // address=/something.com/0.0.0.0, server=/something.com/ or local=/something.com/
+    DNSMASQ {
+        @Override
+        boolean accepts(String line, int start) {
+            return line.startsWith("address=/", start) || line.startsWith("server=/", start) || line.startsWith("local=/", start);
+        }
+
+        @Override
+        boolean parse(String line, int start, DomainSet domains) {
+            int end = trimEnd(line, start, line.length());
+            int index = line.indexOf('/', start) + 1;
+            int lastSlash = line.lastIndexOf('/', end - 1);
+            if (lastSlash < index) {
+                return false;
+            }
+
+            // Only options that don't resolve the domains to a real address block them
+            String target = line.substring(lastSlash + 1, end);
+            boolean address = line.startsWith("address=/", start);
+            if (address ? !target.isEmpty() && !target.equals("#") && !isBlockingAddress(target) : !target.isEmpty()) {
+                return false;
+            }
+
+            // The options apply to the domains and all of their subdomains
+            boolean valid = false;
+            while (index < lastSlash) {
+                int domainEnd = line.indexOf('/', index);
+                valid |= BlockUrlPatternsMatch.addValidZone(line, index, domainEnd, domains);
+                index = domainEnd + 1;
+            }
+            return valid;
+        }
+    },
+
+    // local-zone: "something.com." always_nxdomain or local-data: "something.com. A 0.0.0.0"
+    UNBOUND {
+        @Override
+        boolean accepts(String line, int start) {
+            return line.startsWith(LOCAL_ZONE, start) || line.startsWith(LOCAL_DATA, start);
+        }
+
+        @Override
+        boolean parse(String line, int start, DomainSet domains) {
+            int end = commentStart(line, start);
+            boolean zone = line.startsWith(LOCAL_ZONE, start);
+            int index = skipWhitespace(line, start + (zone ? LOCAL_ZONE.length() : LOCAL_DATA.length()), end);
+
+            // The zone name or the whole resource record of the data may be quoted
+            int valueEnd;
+            int rest;
+            if (index < end && line.charAt(index) == '"') {
+                index++;
+                valueEnd = line.indexOf('"', index);
+                if (valueEnd == -1 || valueEnd >= end) {
+                    return false;
+                }
+                rest = valueEnd + 1;
+            } else {
+                valueEnd = zone ? tokenEnd(line, index, end) : end;
+                rest = valueEnd;
+            }
+            valueEnd = trimEnd(line, index, valueEnd);
+
+            if (zone) {
+                // A zone includes all of its subdomains
+                int typeStart = skipWhitespace(line, rest, end);
+                return isBlockingZoneType(line.substring(typeStart, tokenEnd(line, typeStart, end))) &&
+                        BlockUrlPatternsMatch.addValidZone(line, index, withoutRootDot(line, index, valueEnd), domains);
+            } else {
+                int nameEnd = tokenEnd(line, index, valueEnd);
+                int address = valueEnd;
+                while (address > nameEnd && !isWhitespace(line.charAt(address - 1))) {
+                    address--;
+                }
+                return address > nameEnd && isBlockingAddress(line.substring(address, valueEnd)) &&
+                        BlockUrlPatternsMatch.addValidDomain(line, index, withoutRootDot(line, index, nameEnd), domains);
+            }
+        }
+    },
+
+    // ||something.com^ or ||something.com^$third-party, exception rules and element hiding rules are recognized but ignored
+    ADBLOCK {
+        @Override
+        boolean accepts(String line, int start) {
+            return line.startsWith("||", start) || line.startsWith("@@", start) || line.startsWith("|", start) ||
+                    isElementHidingRule(line, start, "##") || isElementHidingRule(line, start, "#@#") ||
+                    isElementHidingRule(line, start, "#?#");
+        }
+
+        @Override
+        boolean parse(String line, int start, DomainSet domains) {
+            if (!line.startsWith("||", start)) {
+                return false;
+            }
+            // Only rules for the whole domain, the same ones the filter pattern accepted
+            int end = trimEnd(line, start, line.length());
+            int domainEnd = DomainValidator.filterDomainEnd(line, start, end);
+            return domainEnd != -1 && BlockUrlPatternsMatch.addValidZone(line, start + 2, domainEnd, domains);
+        }
+    },
+
+    // something.com or a wildcard like *.something.com
+    DOMAINS {
+        @Override
+        boolean accepts(String line, int start) {
+            char c = line.charAt(start);
+            if (!isAsciiLetterOrDigit(c) && c != '*') {
+                return false;
+            }
+            // Hosts, dnsmasq and unbound lines start with a letter or digit as well
+            int end = commentStart(line, start);
+            for (int i = start; i < end; i++) {
+                c = line.charAt(i);
+                if (isWhitespace(c) || c == '=' || c == ':') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean parse(String line, int start, DomainSet domains) {
+            int end = commentStart(line, start);
+            return end > start && BlockUrlPatternsMatch.addValidHostFileDomain(line, start, end, domains);
+        }
+    },
+
+    // Every line is parsed by the first format that accepts it
+    MIXED {
+        @Override
+        boolean accepts(String line, int start) {
+            return true;
+        }
+
+        @Override
+        boolean parse(String line, int start, DomainSet domains) {
+            HostFileFormat format = lineFormat(line, start);
+            return format != null && format.parse(line, start, domains);
+        }
+    };
+
+    // Results of parseLine()
+    public static final int LINE_VALID = 0;
+    public static final int LINE_COMMENT = 1;
+    // No format accepts the line
+    public static final int LINE_UNSUPPORTED = 2;
+    // The line is accepted by a format, but is not a valid rule or doesn't block anything
+    public static final int LINE_INVALID = 3;
+
+    private static final String LOCAL_ZONE = "local-zone:";
+    private static final String LOCAL_DATA = "local-data:";
+
+    // In the order in which they are tried, hosts lines would otherwise be taken for domains
+    private static final HostFileFormat[] LINE_FORMATS = {HOSTS, DNSMASQ, UNBOUND, ADBLOCK, DOMAINS};
+
+    // Addresses which are used to block a domain
+    private static final String[] BLOCKING_ADDRESSES = {"0.0.0.0", "0.0.0.1", "127.0.0.0", "127.0.0.1", "::", "::1"};
+
+    private static final String[] BLOCKING_ZONE_TYPES = {"deny", "refuse", "static", "redirect", "inform_deny",
+            "always_refuse", "always_nxdomain", "always_null", "always_deny"};
+
+
+    abstract boolean accepts(String line, int start);
+
+    // Returns whether the line contains a valid rule, its domains are added to the set
+    abstract boolean parse(String line, int start, DomainSet domains);
+
+    // Parses a single line, returns one of the LINE_ results
+    public int parseLine(String line, DomainSet domains) {
+        int start = skipWhitespace(line, 0, line.length());
+        if (isCommentOrEmpty(line, start)) {
+            return LINE_COMMENT;
+        }
+        HostFileFormat format = accepts(line, start) ? this : lineFormat(line, start);
+        if (format == null) {
+            return LINE_UNSUPPORTED;
+        }
+        if (format.parse(line, start, domains)) {
+            return LINE_VALID;
+        }
+        // The line may still be a rule of a format which is tried before the detected one
+        HostFileFormat lineFormat = lineFormat(line, start);
+        return lineFormat != null && lineFormat != format && lineFormat.parse(line, start, domains) ? LINE_VALID : LINE_INVALID;
+    }
+
+    // A single format if all recognized sample lines are in that format, otherwise MIXED
+    public static HostFileFormat detect(List<String> sampleLines) {
+        Map<HostFileFormat, Integer> counts = new EnumMap<>(HostFileFormat.class);
+        for (String line : sampleLines) {
+            int start = skipWhitespace(line, 0, line.length());
+            if (isCommentOrEmpty(line, start)) {
+                continue;
+            }
+            HostFileFormat format = lineFormat(line, start);
+            if (format != null) {
+                Integer count = counts.get(format);
+                counts.put(format, count == null ? 1 : count + 1);
+            }
+        }
+        return counts.size() == 1 ? counts.keySet().iterator().next() : MIXED;
+    }
+
+    // The first format which accepts the line, or null if there is none
+    private static HostFileFormat lineFormat(String line, int start) {
+        for (HostFileFormat format : LINE_FORMATS) {
+            if (format.accepts(line, start)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isCommentOrEmpty(String line, int start) {
+        if (start == line.length()) {
+            return true;
+        }
+        char c = line.charAt(start);
+        return (c == '#' && !line.startsWith("##", start) && !line.startsWith("#@#", start) && !line.startsWith("#?#", start)) ||
+                c == '!' || c == '[';
+    }
+
+    // Element hiding rules have no whitespace in front of their marker, unlike a trailing '##' comment
+    private static boolean isElementHidingRule(String line, int start, String marker) {
+        int index = line.indexOf(marker, start);
+        if (index == -1) {
+            return false;
+        }
+        for (int i = start; i < index; i++) {
+            if (isWhitespace(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the index after the blocking address and its whitespaces, or -1 if the line doesn't start with one
+    private static int addressEnd(String line, int start) {
+        int length = line.length();
+        for (String address : BLOCKING_ADDRESSES) {
+            if (line.startsWith(address, start)) {
+                int index = start + address.length();
+                if (index < length && isWhitespace(line.charAt(index))) {
+                    return skipWhitespace(line, index, length);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlockingAddress(String address) {
+        for (String blockingAddress : BLOCKING_ADDRESSES) {
+            if (blockingAddress.equals(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBlockingZoneType(String type) {
+        for (String blockingType : BLOCKING_ZONE_TYPES) {
+            if (blockingType.equalsIgnoreCase(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Comments start with a '#' at the beginning or after a whitespace, the returned end excludes trailing whitespaces
+    private static int commentStart(String line, int start) {
+        int length = line.length();
+        int end = length;
+        for (int i = start; i < length; i++) {
+            if (line.charAt(i) == '#' && (i == start || isWhitespace(line.charAt(i - 1)))) {
+                end = i;
+                break;
+            }
+        }
+        return trimEnd(line, start, end);
+    }
+
+    // Unbound names are usually fully qualified, i.e. end with a dot
+    private static int withoutRootDot(String line, int start, int end) {
+        return end > start && line.charAt(end - 1) == '.' ? end - 1 : end;
+    }
+
+    private static int trimEnd(String line, int start, int end) {
+        while (end > start && isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static int skipWhitespace(String line, int index, int end) {
+        while (index < end && isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int tokenEnd(String line, int index, int end) {
+        while (index < end && !isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    // Same set of characters as \s in the former regex patterns
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
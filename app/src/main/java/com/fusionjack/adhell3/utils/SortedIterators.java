@@ -0,0 +1,58 @@
+package com.fusionjack.adhell3.utils;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.PeekingIterator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Set operations on iterators of sorted unique domains, so that large domain lists are combined
+ * while they are read instead of being loaded into sets first.
+ */
+public final class SortedIterators {
+
+    private SortedIterators() {
+    }
+
+    // The domains which are in either iterator
+    public static Iterator<String> union(Iterator<String> first, Iterator<String> second) {
+        PeekingIterator<String> merged = Iterators.peekingIterator(
+                Iterators.mergeSorted(Arrays.asList(first, second), Ordering.natural()));
+        return new AbstractIterator<String>() {
+            @Override
+            protected String computeNext() {
+                if (!merged.hasNext()) {
+                    return endOfData();
+                }
+                String domain = merged.next();
+                while (merged.hasNext() && merged.peek().equals(domain)) {
+                    merged.next();
+                }
+                return domain;
+            }
+        };
+    }
+
+    // The domains of the first iterator which are not in the second one
+    public static Iterator<String> difference(Iterator<String> first, Iterator<String> second) {
+        PeekingIterator<String> excluded = Iterators.peekingIterator(second);
+        return new AbstractIterator<String>() {
+            @Override
+            protected String computeNext() {
+                while (first.hasNext()) {
+                    String domain = first.next();
+                    while (excluded.hasNext() && excluded.peek().compareTo(domain) < 0) {
+                        excluded.next();
+                    }
+                    if (!excluded.hasNext() || !excluded.peek().equals(domain)) {
+                        return domain;
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+}
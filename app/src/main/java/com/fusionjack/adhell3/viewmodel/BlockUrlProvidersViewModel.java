@@ -4,14 +4,16 @@ import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.MutableLiveData;
 import android.arch.lifecycle.ViewModel;
 
-import com.fusionjack.adhell3.db.AppDatabase;
+import com.fusionjack.adhell3.db.BlocklistDatabase;
 import com.fusionjack.adhell3.db.entity.BlockUrlProvider;
+import com.fusionjack.adhell3.db.entity.BlockUrlProviderStats;
 import com.fusionjack.adhell3.utils.AdhellFactory;
 
 import java.util.List;
 
 public class BlockUrlProvidersViewModel extends ViewModel {
     private LiveData<List<BlockUrlProvider>> blockUrlProviders;
+    private LiveData<List<BlockUrlProviderStats>> latestProviderStats;
 
     public BlockUrlProvidersViewModel() {
     }
@@ -24,8 +26,16 @@ public class BlockUrlProvidersViewModel extends ViewModel {
         return blockUrlProviders;
     }
 
+    public LiveData<List<BlockUrlProviderStats>> getLatestProviderStats() {
+        if (latestProviderStats == null) {
+            BlocklistDatabase blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
+            latestProviderStats = blocklistDatabase.blockUrlProviderStatsDao().getLatest();
+        }
+        return latestProviderStats;
+    }
+
     private void loadBlockUrlProviders() {
-        AppDatabase appDatabase = AdhellFactory.getInstance().getAppDatabase();
-        blockUrlProviders = appDatabase.blockUrlProviderDao().getAll();
+        BlocklistDatabase blocklistDatabase = AdhellFactory.getInstance().getBlocklistDatabase();
+        blockUrlProviders = blocklistDatabase.blockUrlProviderDao().getAll();
     }
 }